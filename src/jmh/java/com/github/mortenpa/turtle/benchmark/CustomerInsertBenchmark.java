@@ -0,0 +1,70 @@
+package com.github.mortenpa.turtle.benchmark;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    CustomerRepository.saveAll of a chunk of new customers in one transaction, like a _bulk chunk, per customer.
+    With a batch size of 1 every customer is its own insert statement, which is what the IDENTITY ids used to force.
+    With 50 the inserts go out as JDBC batches, with ids from the pooled sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerInsertBenchmark {
+
+    private static final int CHUNK_SIZE = 500;
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private CustomerRepository customerRepository;
+    private TransactionTemplate transactionTemplate;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(TurtleApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        "turtleman.search.index-enabled=false"
+                )
+                .run();
+        customerRepository = context.getBean(CustomerRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public List<CustomerEntity> saveAll() {
+        List<CustomerEntity> customers = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            customers.add(new CustomerEntity("Bench", "Mark", "insert" + sequence.incrementAndGet() + "@turtle.sea"));
+        }
+        return transactionTemplate.execute(status -> customerRepository.saveAll(customers));
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.mortenpa.turtle.benchmark;
+
+import com.github.mortenpa.turtle.controller.CustomerController;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// CustomerController.createCustomerEntityFromDTO, which includes normalizing the email
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerMappingBenchmark {
+
+    private CustomerController controller;
+    private CustomerDTO customerDTO;
+
+    @Setup
+    public void setUp() {
+        // the mapping doesn't use any of the services
+        controller = new CustomerController(null, null, null, null, null, null, null, null);
+        customerDTO = new CustomerDTO("Bench", "Mark", " Bench.Mark@Turtle.Sea ");
+    }
+
+    @Benchmark
+    public CustomerEntity createCustomerEntityFromDTO() {
+        return controller.createCustomerEntityFromDTO(customerDTO);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.mortenpa.turtle.benchmark;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.service.CustomerService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    CustomerService.addOrModify against the embedded H2 database, with and without the customer cache.
+    The application runs without a web server, add inserts a new customer on every call, modify updates the same one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+    @Param({"caffeine", "none"})
+    private String cacheType;
+
+    private ConfigurableApplicationContext context;
+    private CustomerService customerService;
+    private long existingCustomerId;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(TurtleApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.cache.type=" + cacheType,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        "turtleman.search.index-enabled=false"
+                )
+                .run();
+        customerService = context.getBean(CustomerService.class);
+        existingCustomerId = customerService.addOrModify(new CustomerEntity("Bench", "Mark", "existing@turtle.sea")).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public CustomerEntity add() {
+        return customerService.addOrModify(new CustomerEntity("Bench", "Mark", "add" + sequence.incrementAndGet() + "@turtle.sea"));
+    }
+
+    @Benchmark
+    public CustomerEntity modify() {
+        CustomerEntity customer = new CustomerEntity("Bench", "Mark" + (sequence.incrementAndGet() % 2), "existing@turtle.sea");
+        customer.setId(existingCustomerId);
+        return customerService.addOrModify(customer);
+    }
+}
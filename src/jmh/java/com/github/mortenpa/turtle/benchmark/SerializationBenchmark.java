@@ -0,0 +1,72 @@
+package com.github.mortenpa.turtle.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.mortenpa.turtle.controller.CustomerApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerPageApiResponse;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson with the settings Spring Boot uses for the API, responses are written and request bodies read as bytes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private ObjectMapper objectMapper;
+    private CustomerApiResponse customerResponse;
+    private CustomerPageApiResponse pageResponse;
+    private byte[] customerDTOJson;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        customerResponse = new CustomerApiResponse(true, customer(1));
+        List<CustomerEntity> customers = new ArrayList<>();
+        for (int i = 1; i <= PAGE_SIZE; i++) {
+            customers.add(customer(i));
+        }
+        pageResponse = new CustomerPageApiResponse(true, customers, "bmV4dA");
+        customerDTOJson = "{\"firstName\":\"Bench\",\"lastName\":\"Mark\",\"email\":\"bench.mark@turtle.sea\"}"
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CustomerEntity customer(long id) {
+        CustomerEntity customer = new CustomerEntity("Bench", "Mark", "bench.mark" + id + "@turtle.sea");
+        customer.setId(id);
+        customer.setCreatedDtime(OffsetDateTime.now());
+        customer.setModifiedDtime(OffsetDateTime.now());
+        return customer;
+    }
+
+    @Benchmark
+    public byte[] writeCustomerResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(customerResponse);
+    }
+
+    @Benchmark
+    public byte[] writePageResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(pageResponse);
+    }
+
+    @Benchmark
+    public CustomerDTO readCustomerDTO() throws Exception {
+        return objectMapper.readValue(customerDTOJson, CustomerDTO.class);
+    }
+}
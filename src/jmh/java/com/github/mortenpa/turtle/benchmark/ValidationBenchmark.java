@@ -0,0 +1,58 @@
+package com.github.mortenpa.turtle.benchmark;
+
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Hibernate Validator on CustomerDTO, as done for request bodies, and on CustomerEntity, as done by CustomerService
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private CustomerDTO validDTO;
+    private CustomerDTO invalidDTO;
+    private CustomerEntity validEntity;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        validDTO = new CustomerDTO("Bench", "Mark", "bench.mark@turtle.sea");
+        // every constraint fails, building the violations is the expensive part
+        invalidDTO = new CustomerDTO("", "", "not an email");
+        validEntity = new CustomerEntity("Bench", "Mark", "bench.mark@turtle.sea");
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CustomerDTO>> validDTO() {
+        return validator.validate(validDTO);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CustomerDTO>> invalidDTO() {
+        return validator.validate(invalidDTO);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CustomerEntity>> validEntity() {
+        return validator.validate(validEntity);
+    }
+}
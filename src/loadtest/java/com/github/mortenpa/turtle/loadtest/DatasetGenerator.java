@@ -0,0 +1,210 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/*
+    Bulk-loads customers straight into the customer table with batched JDBC inserts.
+
+    Skips the validation, the persistence context and the entity listeners of going through CustomerService or the API.
+    Names are drawn from lists of common names and every email carries the customer's number, so the emails are unique.
+    The number is also the id, and the customer with number n is always the same, so benchmarks can compute the email
+    of any generated customer with email(n). Creation datetimes are spread over the last years.
+
+    The ids are set here and the id sequence is moved past them at the end, nothing else should insert customers
+    while this runs.
+
+    The service keeps the email filter and the search index in memory, both only see the generated customers
+    once they are rebuilt, which happens on the next start.
+
+    Fills the database of the durable profile:
+    ./gradlew generateDataset -Pargs="--customers=10000000 --data-dir=./data"
+ */
+public class DatasetGenerator {
+
+    private static final String[] FIRST_NAMES = {
+            "Maria", "Anna", "Laura", "Sofia", "Emma", "Elena", "Julia", "Eva", "Sara", "Hanna",
+            "Liis", "Kadri", "Katrin", "Mari", "Kristiina", "Olga", "Ingrid", "Nora", "Alice", "Mia",
+            "Martin", "Andres", "Jaan", "Peeter", "Mihkel", "Karl", "Markus", "Rasmus", "Oliver", "Robert",
+            "Thomas", "Daniel", "David", "Lucas", "Erik", "Aleksander", "Mikk", "Tanel", "Henrik", "Morten"
+    };
+    private static final String[] LAST_NAMES = {
+            "Tamm", "Saar", "Sepp", "Mägi", "Kask", "Kukk", "Rebane", "Ilves", "Pärn", "Koppel",
+            "Smith", "Johnson", "Brown", "Garcia", "Miller", "Davis", "Wilson", "Anderson", "Taylor", "Thomas",
+            "Müller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker", "Hoffmann", "Koch",
+            "Virtanen", "Korhonen", "Nieminen", "Mäkinen", "Hämäläinen", "Laine", "Nielsen", "Hansen", "Larsen", "Turtle"
+    };
+    private static final String[] DOMAINS = {"turtle.sea", "mail.ee", "example.com", "post.de", "inbox.fi"};
+    // emails are kept to ASCII, Mägi becomes magi
+    private static final String[] FIRST_NAMES_ASCII = toEmailParts(FIRST_NAMES);
+    private static final String[] LAST_NAMES_ASCII = toEmailParts(LAST_NAMES);
+
+    private static final String INSERT = "INSERT INTO customer "
+            + "(id, first_name, last_name, email, email_normalized, created_datetime, modified_datetime) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // the same as the Liquibase changeset that introduced the sequence, Hibernate takes the ids below the value it reads
+    private static final String RESTART_ID_SEQUENCE = "ALTER SEQUENCE customer_id_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM customer)";
+    // creation datetimes are spread over this long before now, the first customer is the oldest
+    private static final Duration HISTORY = Duration.ofDays(5 * 365);
+
+    public static void main(String[] args) throws Exception {
+        String dataDir = stringArgument(args, "--data-dir", "./data");
+        long customers = Long.parseLong(stringArgument(args, "--customers", "1000000"));
+        int batchSize = Integer.parseInt(stringArgument(args, "--batch-size", "10000"));
+
+        // started once for Liquibase to create the schema, the application is not used otherwise
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TurtleApplication.class)
+                .profiles("durable")
+                .properties(
+                        "spring.main.web-application-type=none",
+                        "turtleman.durable.path=" + dataDir,
+                        "turtleman.search.index-enabled=false",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn"
+                )
+                .run()) {
+            Result result = generate(context.getBean(DataSource.class), customers, batchSize);
+            System.out.println(result);
+        }
+    }
+
+    // appends customers to the table, numbered on from the highest id in it, so a second run adds new customers
+    public static Result generate(DataSource dataSource, long customers, int batchSize) throws SQLException {
+        double[] tenthRates = new double[10];
+        long startTime = System.nanoTime();
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            long first = nextNumber(connection);
+            OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+            long spacingNanos = HISTORY.toNanos() / Math.max(1, customers);
+
+            try (PreparedStatement statement = connection.prepareStatement(INSERT);
+                 Statement restartStatement = connection.createStatement()) {
+                int tenth = 0;
+                long tenthStart = startTime;
+                long tenthFirst = 0;
+                for (long i = 0; i < customers; i++) {
+                    long number = first + i;
+                    String email = email(number);
+                    OffsetDateTime created = now.minusNanos((customers - i) * spacingNanos);
+                    statement.setLong(1, number);
+                    statement.setString(2, firstName(number));
+                    statement.setString(3, lastName(number));
+                    statement.setString(4, email);
+                    // already lower-case, which is all the normalization an email without surrounding whitespace needs
+                    statement.setString(5, email);
+                    statement.setObject(6, created);
+                    statement.setObject(7, created);
+                    statement.addBatch();
+
+                    boolean lastOfBatch = (i + 1) % batchSize == 0 || i + 1 == customers;
+                    if (lastOfBatch) {
+                        statement.executeBatch();
+                        connection.commit();
+                    }
+
+                    // the insert rate per tenth of the load shows how it degrades as the indexes grow
+                    if (lastOfBatch && (i + 1 >= (tenth + 1) * customers / 10 || i + 1 == customers)) {
+                        long tenthEnd = System.nanoTime();
+                        tenthRates[Math.min(tenth, 9)] = (i + 1 - tenthFirst) * 1e9 / Math.max(1, tenthEnd - tenthStart);
+                        System.out.printf("generated %,d of %,d customers, %,.0f/s%n", i + 1, customers, tenthRates[Math.min(tenth, 9)]);
+                        tenth++;
+                        tenthStart = tenthEnd;
+                        tenthFirst = i + 1;
+                    }
+                }
+
+                restartStatement.execute(RESTART_ID_SEQUENCE);
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        return new Result(customers, Duration.ofNanos(System.nanoTime() - startTime), tenthRates);
+    }
+
+    // the customers are numbered from 1, the number is also the id
+    public static String email(long number) {
+        return FIRST_NAMES_ASCII[firstNameIndex(number)] + "." + LAST_NAMES_ASCII[lastNameIndex(number)] + "."
+                + Long.toString(number, 36) + "@" + DOMAINS[(int) ((mix(number) >>> 32) % DOMAINS.length)];
+    }
+
+    public static String firstName(long number) {
+        return FIRST_NAMES[firstNameIndex(number)];
+    }
+
+    public static String lastName(long number) {
+        return LAST_NAMES[lastNameIndex(number)];
+    }
+
+    private static int firstNameIndex(long number) {
+        return (int) (mix(number) % FIRST_NAMES.length);
+    }
+
+    private static int lastNameIndex(long number) {
+        return (int) ((mix(number) >>> 16) % LAST_NAMES.length);
+    }
+
+    private static String[] toEmailParts(String[] names) {
+        String[] parts = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            parts[i] = Normalizer.normalize(names[i], Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+        }
+        return parts;
+    }
+
+    static String[] lastNames() {
+        return LAST_NAMES.clone();
+    }
+
+    private static long nextNumber(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM customer")) {
+            resultSet.next();
+            return resultSet.getLong(1) + 1;
+        }
+    }
+
+    // spreads consecutive numbers over the name lists, non-negative
+    private static long mix(long number) {
+        long hash = number * 0x9E3779B97F4A7C15L;
+        return (hash ^ (hash >>> 31)) >>> 1;
+    }
+
+    private static String stringArgument(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    public record Result(long customers, Duration duration, double[] tenthRates) {
+
+        public double rate() {
+            return customers * 1e9 / Math.max(1, duration.toNanos());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d customers in %.1f s, %,.0f/s (first tenth %,.0f/s, last tenth %,.0f/s)",
+                    customers, duration.toMillis() / 1000.0, rate(), tenthRates[0], tenthRates[9]);
+        }
+    }
+}
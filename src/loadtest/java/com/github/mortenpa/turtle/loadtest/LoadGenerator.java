@@ -0,0 +1,298 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mortenpa.turtle.TurtleApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Drives a mix of create, get, update and delete requests at a fixed rate against /api/customers (open model).
+
+    Requests are sent on a schedule, no matter how long earlier requests take, and the latency of a request is measured
+    from the moment it was scheduled to be sent. A stalled server therefore shows up in the latencies of all the
+    requests that should have been sent during the stall, not just the one that hit it (coordinated omission).
+
+    The application is started in this JVM on a random port and seeded with --customers customers, gets and updates
+    go to random seeded customers, deletes to customers created during the run. Latencies are recorded in an HDR
+    histogram per operation, the full percentile distributions are written to --histogram-dir as .hgrm files.
+    --metrics=on,off runs the same load twice, with and without metrics.
+
+    ./gradlew loadTest -Pargs="--rate=2000 --mix=get:70,create:10,update:15,delete:5 --customers=1000000"
+ */
+public class LoadGenerator {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+    // latencies are recorded in microseconds, up to a minute with 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private enum Operation { GET, CREATE, UPDATE, DELETE }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        int rate = intArgument(args, "--rate", 1000);
+        int durationSeconds = intArgument(args, "--duration", 30);
+        int warmupSeconds = intArgument(args, "--warmup", 10);
+        int customers = intArgument(args, "--customers", 10_000);
+        String mix = stringArgument(args, "--mix", "get:70,create:10,update:15,delete:5");
+        String cache = stringArgument(args, "--cache", "caffeine");
+        List<String> metricsModes = List.of(stringArgument(args, "--metrics", "on").split(","));
+        Path histogramDir = Path.of(stringArgument(args, "--histogram-dir", "build/results/loadtest"));
+
+        Map<Operation, Integer> weights = parseMix(mix);
+        System.out.printf("rate=%d/s duration=%ds warmup=%ds customers=%d mix=%s cache=%s metrics=%s%n",
+                rate, durationSeconds, warmupSeconds, customers, weights, cache, metricsModes);
+
+        // with --metrics=on,off the same load runs with and without metrics, which shows what they cost
+        for (String metrics : metricsModes) {
+            try (ConfigurableApplicationContext context = start(cache, metrics.equals("on"))) {
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/customers";
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                long seedStart = System.nanoTime();
+                List<Long> seededIds = seed(client, baseUrl, customers);
+                System.out.printf("%nmetrics %s: seeded %d customers in %d s%n",
+                        metrics, seededIds.size(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - seedStart));
+
+                LoadRun warmup = new LoadRun(client, baseUrl, seededIds, weights);
+                warmup.run(rate, warmupSeconds);
+
+                LoadRun measured = new LoadRun(client, baseUrl, seededIds, weights);
+                measured.run(rate, durationSeconds);
+                measured.report(rate, durationSeconds, histogramDir.resolve("metrics-" + metrics));
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String cache, boolean metrics) {
+        return new SpringApplicationBuilder(TurtleApplication.class)
+                .properties(
+                        "server.port=0",
+                        // a fresh database per run
+                        "spring.datasource.url=jdbc:h2:mem:loadtest-metrics-" + metrics,
+                        "spring.cache.type=" + cache,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        // every meter becomes a no-op, Hibernate stops collecting statistics
+                        "management.metrics.enable.all=" + metrics,
+                        "spring.jpa.properties.hibernate.generate_statistics=" + metrics
+                )
+                .run();
+    }
+
+    private static List<Long> seed(HttpClient client, String baseUrl, int customers) throws Exception {
+        List<Long> ids = new ArrayList<>(customers);
+        for (int start = 0; start < customers; start += SEED_BATCH_SIZE) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = start; i < Math.min(start + SEED_BATCH_SIZE, customers); i++) {
+                if (i > start) {
+                    body.append(',');
+                }
+                body.append("{\"operation\":\"CREATE\",\"customer\":").append(customerJson("seed" + i)).append('}');
+            }
+            body.append(']');
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/_bulk"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+            }
+            for (JsonNode result : objectMapper.readTree(response.body()).path("results")) {
+                ids.add(result.path("id").asLong());
+            }
+        }
+        return ids;
+    }
+
+    private static class LoadRun {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final List<Long> seededIds;
+        private final Operation[] schedule;
+
+        private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+        // customers created during the run, the only ones that get deleted
+        private final ConcurrentLinkedQueue<Long> createdIds = new ConcurrentLinkedQueue<>();
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicLong skippedDeletes = new AtomicLong();
+
+        LoadRun(HttpClient client, String baseUrl, List<Long> seededIds, Map<Operation, Integer> weights) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.seededIds = seededIds;
+
+            // one slot per weight point, the operation of a request is a random slot
+            List<Operation> slots = new ArrayList<>();
+            weights.forEach((operation, weight) -> {
+                for (int i = 0; i < weight; i++) {
+                    slots.add(operation);
+                }
+            });
+            this.schedule = slots.toArray(new Operation[0]);
+
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+                errors.put(operation, new AtomicLong());
+            }
+        }
+
+        void run(int rate, int durationSeconds) {
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            long requests = (long) rate * durationSeconds;
+            long start = System.nanoTime();
+
+            // every request gets a virtual thread, the number of requests in flight is never capped by the generator
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (long i = 0; i < requests; i++) {
+                    long intendedStart = start + i * intervalNanos;
+                    long wait = intendedStart - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+                    executor.submit(() -> send(operation, intendedStart));
+                }
+            }
+        }
+
+        private void send(Operation operation, long intendedStart) {
+            HttpRequest request = request(operation);
+            if (request == null) {
+                skippedDeletes.incrementAndGet();
+                return;
+            }
+
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                // measured from the scheduled start, so time spent waiting behind a slow server is included
+                long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                histograms.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+
+                if (response.statusCode() >= 300) {
+                    errors.get(operation).incrementAndGet();
+                }
+                else if (operation == Operation.CREATE) {
+                    createdIds.add(objectMapper.readTree(response.body()).path("customer").path("id").asLong());
+                }
+            } catch (Exception exception) {
+                errors.get(operation).incrementAndGet();
+            }
+        }
+
+        // null for a delete when there is no created customer left to delete
+        private HttpRequest request(Operation operation) {
+            // seeded customer i has the email seed<i>@turtle.sea, the bulk results are in request order
+            int seedIndex = ThreadLocalRandom.current().nextInt(seededIds.size());
+            long seededId = seededIds.get(seedIndex);
+            return switch (operation) {
+                case GET -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + seededId)).GET().build();
+                case CREATE -> HttpRequest.newBuilder(URI.create(baseUrl))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(customerJson("load" + System.nanoTime() + "-" + sequence.incrementAndGet())))
+                        .build();
+                case UPDATE -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + seededId))
+                        .header("Content-Type", "application/json")
+                        // the seeded email is kept, only the name changes
+                        .PUT(HttpRequest.BodyPublishers.ofString("{\"firstName\":\"Updated" + (sequence.incrementAndGet() % 100)
+                                + "\",\"lastName\":\"Test\",\"email\":\"seed" + seedIndex + "@turtle.sea\"}"))
+                        .build();
+                case DELETE -> {
+                    Long createdId = createdIds.poll();
+                    yield createdId == null ? null : HttpRequest.newBuilder(URI.create(baseUrl + "/" + createdId)).DELETE().build();
+                }
+            };
+        }
+
+        void report(int rate, int durationSeconds, Path histogramDir) throws Exception {
+            Files.createDirectories(histogramDir);
+            Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+            System.out.println();
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = histograms.get(operation);
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                total.add(histogram);
+                System.out.println(line(operation.name().toLowerCase(), histogram, durationSeconds, errors.get(operation).get()));
+
+                try (PrintStream output = new PrintStream(histogramDir.resolve(operation.name().toLowerCase() + ".hgrm").toFile())) {
+                    // scaled to milliseconds
+                    histogram.outputPercentileDistribution(output, 1000.0);
+                }
+            }
+            long totalErrors = errors.values().stream().mapToLong(AtomicLong::get).sum();
+            System.out.println(line("total", total, durationSeconds, totalErrors));
+            System.out.printf("target %d req/s, %d deletes skipped for lack of created customers, histograms in %s%n",
+                    rate, skippedDeletes.get(), histogramDir.toAbsolutePath());
+        }
+
+        private static String line(String name, Histogram histogram, int durationSeconds, long errors) {
+            return String.format("%-7s %8.0f req/s  p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  max %8.2f ms  errors %d",
+                    name,
+                    (double) histogram.getTotalCount() / durationSeconds,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0,
+                    errors);
+        }
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] operationAndWeight = part.split(":");
+            weights.put(Operation.valueOf(operationAndWeight[0].trim().toUpperCase()), Integer.parseInt(operationAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    private static String customerJson(String emailName) {
+        return "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"email\":\"" + emailName + "@turtle.sea\"}";
+    }
+
+    private static String stringArgument(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        return Integer.parseInt(stringArgument(args, name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Measures how long a restart of the durable profile takes until the API answers, on a database of a given size.
+
+    The database under --data-dir is filled up to --size-gb first, that only happens on the first run, later runs
+    reuse it. The application is then restarted --restarts times with and without the Liquibase changelog marker.
+    Reported per restart: the time until the context is started, until the first customer is returned and
+    how long the shutdown (including H2's compaction) took.
+
+    ./gradlew restartBenchmark -Pargs="--size-gb=5 --restarts=3"
+ */
+public class RestartBenchmark {
+
+    private static final String DATABASE_NAME = "turtlemandb";
+
+    public static void main(String[] args) throws Exception {
+        Path dataDir = Path.of(stringArgument(args, "--data-dir", "build/restart-benchmark"));
+        double sizeGigabytes = Double.parseDouble(stringArgument(args, "--size-gb", "5"));
+        int restarts = intArgument(args, "--restarts", 3);
+        int batchSize = intArgument(args, "--batch-size", 1_000_000);
+
+        System.out.printf("data-dir=%s size=%.1fGB restarts=%d%n", dataDir.toAbsolutePath(), sizeGigabytes, restarts);
+        fill(dataDir, (long) (sizeGigabytes * 1024 * 1024 * 1024), batchSize);
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        List<String> report = new ArrayList<>();
+        for (boolean skipUnchanged : new boolean[] {true, false}) {
+            for (int restart = 1; restart <= restarts; restart++) {
+                long startTime = System.nanoTime();
+                ConfigurableApplicationContext context = start(dataDir, skipUnchanged);
+                long startedMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+                String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/customers/1";
+                HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.discarding());
+                long firstResponseMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+                long stopTime = System.nanoTime();
+                context.close();
+                long shutdownMillis = (System.nanoTime() - stopTime) / 1_000_000;
+
+                report.add(String.format("%-19s #%d  started %6d ms  first response %6d ms (%d)  shutdown %6d ms",
+                        skipUnchanged ? "changelog marker" : "liquibase every run",
+                        restart, startedMillis, firstResponseMillis, response.statusCode(), shutdownMillis));
+            }
+        }
+
+        System.out.printf("%ndatabase file %.2f GB%n", databaseFileSize(dataDir) / (1024.0 * 1024 * 1024));
+        report.forEach(System.out::println);
+    }
+
+    private static ConfigurableApplicationContext start(Path dataDir, boolean skipUnchanged) {
+        return new SpringApplicationBuilder(TurtleApplication.class)
+                .profiles("durable")
+                .properties(
+                        "server.port=0",
+                        "turtleman.durable.path=" + dataDir.toAbsolutePath(),
+                        "turtleman.liquibase.skip-unchanged=" + skipUnchanged,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn"
+                )
+                .run();
+    }
+
+    // generated in the database itself, going through the API would take hours for this many customers
+    private static void fill(Path dataDir, long targetBytes, int batchSize) {
+        if (databaseFileSize(dataDir) >= targetBytes) {
+            return;
+        }
+
+        try (ConfigurableApplicationContext context = start(dataDir, true)) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            while (databaseFileSize(dataDir) < targetBytes) {
+                Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM customer", Long.class);
+                long from = maxId + 1;
+                jdbcTemplate.update(
+                        "INSERT INTO customer (first_name, last_name, email, email_normalized) "
+                                + "SELECT 'First' || X, 'Last' || X, 'restart' || X || '@turtle.sea', 'restart' || X || '@turtle.sea' "
+                                + "FROM SYSTEM_RANGE(?, ?)",
+                        from, from + batchSize - 1
+                );
+                jdbcTemplate.execute("CHECKPOINT");
+                System.out.printf("filled up to customer %d, %.2f GB%n", from + batchSize - 1,
+                        databaseFileSize(dataDir) / (1024.0 * 1024 * 1024));
+            }
+        }
+    }
+
+    private static long databaseFileSize(Path dataDir) {
+        Path file = dataDir.resolve(DATABASE_NAME + ".mv.db");
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (Exception exception) {
+            throw new IllegalStateException("Could not read the size of " + file, exception);
+        }
+    }
+
+    private static String stringArgument(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        return Integer.parseInt(stringArgument(args, name, String.valueOf(defaultValue)));
+    }
+}
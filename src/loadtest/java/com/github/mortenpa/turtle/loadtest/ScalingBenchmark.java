@@ -0,0 +1,289 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mortenpa.turtle.TurtleApplication;
+import com.github.mortenpa.turtle.service.CustomerEmailRegistry;
+import com.github.mortenpa.turtle.service.CustomerSearchService;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Measures how Turtleman scales with the number of customers, by default at 10K, 1M and 10M customers.
+
+    Per size, a fresh in-memory database is filled by DatasetGenerator and the application is restarted on it, so that
+    the email filter and the search index are built from the full table like after a real restart. Reported per size:
+    - the insert rate of the generator (batched JDBC) over the first and the last tenth of the table, and the rate of
+      _bulk creates through Hibernate
+    - startup, email filter and search index build times
+    - heap in use after a GC, per customer as well, the in-memory database is on the heap too
+    - latency percentiles of each endpoint, measured one request at a time with the cache off
+    - time to the first row and to the end of a full NDJSON export
+    Creates have to check the unique email indexes, and by-email lookups go through them, both grow with the table.
+
+    Needs a big heap for 10M customers (see the task), smaller sizes with --sizes=10000,1000000.
+    ./gradlew scalingBenchmark -Pargs="--sizes=10000,1000000,10000000 --requests=2000"
+ */
+public class ScalingBenchmark {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int BULK_BATCH_SIZE = 1000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        List<Long> sizes = new ArrayList<>();
+        for (String size : stringArgument(args, "--sizes", "10000,1000000,10000000").split(",")) {
+            sizes.add(Long.parseLong(size.trim()));
+        }
+        int requests = intArgument(args, "--requests", 2000);
+        int warmupRequests = intArgument(args, "--warmup", 500);
+        int bulkCreates = intArgument(args, "--bulk-creates", 10_000);
+        int batchSize = intArgument(args, "--batch-size", 10_000);
+
+        System.out.printf("sizes=%s requests=%d warmup=%d bulk-creates=%d max-heap=%dMB%n",
+                sizes, requests, warmupRequests, bulkCreates, memory.getHeapMemoryUsage().getMax() / (1024 * 1024));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<String> report = new ArrayList<>();
+
+        for (long size : sizes) {
+            // kept open between the two starts, dropped at the end
+            String url = "jdbc:h2:mem:scaling-" + size + ";DB_CLOSE_DELAY=-1";
+
+            DatasetGenerator.Result generated;
+            long emptyHeap;
+            try (ConfigurableApplicationContext context = start(url)) {
+                emptyHeap = usedHeapAfterGc();
+                generated = DatasetGenerator.generate(context.getBean(DataSource.class), size, batchSize);
+            }
+
+            long startTime = System.nanoTime();
+            try (ConfigurableApplicationContext context = start(url)) {
+                long startupMillis = millisSince(startTime);
+                long emailFilterMillis = timeMillis(() -> context.getBean(CustomerEmailRegistry.class).rebuild());
+                awaitSearchIndex(context.getBean(CustomerSearchService.class));
+                long searchIndexMillis = millisSince(startTime);
+                long heap = usedHeapAfterGc();
+
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/customers";
+                Endpoints endpoints = new Endpoints(client, baseUrl, size);
+                endpoints.run(warmupRequests);
+                Map<String, Histogram> latencies = endpoints.run(requests);
+                double bulkRate = endpoints.bulkCreateRate(bulkCreates);
+                long[] exportMillis = endpoints.exportMillis();
+
+                StringBuilder block = new StringBuilder();
+                block.append(String.format("%n%,d customers%n", size));
+                block.append(String.format("  generator     %s%n", generated));
+                block.append(String.format("  _bulk create  %,.0f/s through Hibernate%n", bulkRate));
+                block.append(String.format("  export        first row after %,d ms, all rows after %,d ms%n", exportMillis[0], exportMillis[1]));
+                block.append(String.format("  startup %,d ms, email filter rebuild %,d ms, search index ready %,d ms after start%n",
+                        startupMillis, emailFilterMillis, searchIndexMillis));
+                block.append(String.format("  heap %,d MB after GC, %,d bytes per customer over the empty application%n",
+                        heap / (1024 * 1024), (heap - emptyHeap) / Math.max(1, size)));
+                latencies.forEach((endpoint, histogram) -> block.append(String.format(
+                        "  %-13s p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms%n", endpoint,
+                        histogram.getValueAtPercentile(50) / 1000.0,
+                        histogram.getValueAtPercentile(99) / 1000.0,
+                        histogram.getMaxValue() / 1000.0)));
+                System.out.print(block);
+                report.add(block.toString());
+
+                // frees the heap for the next size
+                context.getBean(JdbcTemplate.class).execute("DROP ALL OBJECTS");
+            }
+        }
+
+        System.out.println();
+        report.forEach(System.out::print);
+    }
+
+    private static ConfigurableApplicationContext start(String url) {
+        return new SpringApplicationBuilder(TurtleApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + url,
+                        // every read reaches the database, which is what grows
+                        "spring.cache.type=none",
+                        "spring.jpa.show-sql=false",
+                        // slow statements are still logged, with their plans
+                        "logging.level.root=warn"
+                )
+                .run();
+    }
+
+    // the index is built in the background after startup, until then searches scan the table
+    private static void awaitSearchIndex(CustomerSearchService searchService) throws InterruptedException {
+        while (searchService.searchIds("turtle", 1).isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long timeMillis(Runnable runnable) {
+        long startTime = System.nanoTime();
+        runnable.run();
+        return millisSince(startTime);
+    }
+
+    private static long millisSince(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private static class Endpoints {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final long customers;
+        private final String[] lastNames = DatasetGenerator.lastNames();
+
+        Endpoints(HttpClient client, String baseUrl, long customers) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.customers = customers;
+        }
+
+        // each endpoint in turn, one request at a time
+        Map<String, Histogram> run(int requests) throws Exception {
+            Map<String, Histogram> histograms = new LinkedHashMap<>();
+            for (String endpoint : List.of("get", "get by email", "page", "search", "create", "update", "delete")) {
+                histograms.put(endpoint, new Histogram(HIGHEST_TRACKABLE_MICROS, 3));
+            }
+
+            List<Long> createdIds = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                long number = ThreadLocalRandom.current().nextLong(1, customers + 1);
+                send(histograms.get("get"), get("/" + number));
+                send(histograms.get("get by email"), get("/by-email/" + DatasetGenerator.email(number)));
+                send(histograms.get("page"), get("?sort=created_datetime&limit=50"));
+                String lastName = lastNames[ThreadLocalRandom.current().nextInt(lastNames.length)];
+                send(histograms.get("search"), get("/search?q=" + URLEncoder.encode(lastName.substring(0, 3), StandardCharsets.UTF_8) + "&limit=20"));
+
+                HttpResponse<String> created = send(histograms.get("create"), json("", "POST",
+                        customerJson("Scaling", "Benchmark", "scaling-" + UUID.randomUUID() + "@turtle.sea")));
+                createdIds.add(objectMapper.readTree(created.body()).path("customer").path("id").asLong());
+
+                // the generated customer's own email, so the update never runs into another customer's
+                send(histograms.get("update"), json("/" + number, "PUT",
+                        customerJson(DatasetGenerator.firstName(number), "Updated", DatasetGenerator.email(number))));
+            }
+            for (long createdId : createdIds) {
+                send(histograms.get("delete"), HttpRequest.newBuilder(URI.create(baseUrl + "/" + createdId)).DELETE().build());
+            }
+            return histograms;
+        }
+
+        // creates through _bulk, batched by Hibernate with ids from the pooled sequence
+        double bulkCreateRate(int creates) throws Exception {
+            long startTime = System.nanoTime();
+            for (int start = 0; start < creates; start += BULK_BATCH_SIZE) {
+                StringBuilder body = new StringBuilder("[");
+                for (int i = start; i < Math.min(start + BULK_BATCH_SIZE, creates); i++) {
+                    if (i > start) {
+                        body.append(',');
+                    }
+                    body.append("{\"operation\":\"CREATE\",\"customer\":")
+                            .append(customerJson("Bulk", "Benchmark", "bulk-" + UUID.randomUUID() + "@turtle.sea")).append('}');
+                }
+                body.append(']');
+
+                HttpResponse<String> response = client.send(json("/_bulk", "POST", body.toString()), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Bulk create failed with status " + response.statusCode());
+                }
+            }
+            return creates * 1e9 / (System.nanoTime() - startTime);
+        }
+
+        // the first row has to arrive long before the last one, otherwise the export is not streamed
+        long[] exportMillis() throws Exception {
+            long startTime = System.nanoTime();
+            HttpResponse<InputStream> response = client.send(get("/export?format=ndjson"), HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Export failed with status " + response.statusCode());
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                if (reader.readLine() == null) {
+                    throw new IllegalStateException("Export returned no customers");
+                }
+                long firstRowMillis = millisSince(startTime);
+                while (reader.readLine() != null) {
+                    // drains the rest of the export
+                }
+                return new long[] {firstRowMillis, millisSince(startTime)};
+            }
+        }
+
+        private HttpResponse<String> send(Histogram histogram, HttpRequest request) throws Exception {
+            long startTime = System.nanoTime();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime), HIGHEST_TRACKABLE_MICROS));
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException(request.method() + " " + request.uri() + " failed with status " + response.statusCode());
+            }
+            return response;
+        }
+
+        private HttpRequest get(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+        }
+
+        private HttpRequest json(String path, String method, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+
+        private static String customerJson(String firstName, String lastName, String email) {
+            return "{\"firstName\":\"" + firstName + "\",\"lastName\":\"" + lastName + "\",\"email\":\"" + email + "\"}";
+        }
+    }
+
+    private static String stringArgument(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        return Integer.parseInt(stringArgument(args, name, String.valueOf(defaultValue)));
+    }
+}
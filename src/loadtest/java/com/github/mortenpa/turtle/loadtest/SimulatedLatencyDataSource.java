@@ -0,0 +1,85 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/*
+    Makes every statement execution sleep for a while, like a database across the network would.
+    The in-memory H2 answers in microseconds, which hides the blocking that virtual threads are meant to help with.
+ */
+class SimulatedLatencyDataSource implements BeanPostProcessor {
+
+    private final long latencyMillis;
+
+    SimulatedLatencyDataSource(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (latencyMillis <= 0 || !(bean instanceof DataSource dataSource)) {
+            return bean;
+        }
+        return proxy(DataSource.class, dataSource, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            return result instanceof Connection connection ? proxyConnection(connection) : result;
+        });
+    }
+
+    private Connection proxyConnection(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            return result instanceof Statement statement ? proxyStatement(statement) : result;
+        });
+    }
+
+    private Statement proxyStatement(Statement statement) {
+        // prepared and callable statements have to keep their interfaces
+        Class<?>[] interfaces = statementInterfaces(statement.getClass());
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                Thread.sleep(latencyMillis);
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private <T> T proxy(Class<T> type, T target, TargetInvocation invocation) {
+        InvocationHandler handler = (proxy, method, args) -> invocation.invoke(target, method, args);
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    private static Class<?>[] statementInterfaces(Class<?> type) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> candidate : current.getInterfaces()) {
+                if (Statement.class.isAssignableFrom(candidate)) {
+                    interfaces.add(candidate);
+                }
+            }
+        }
+        return interfaces.toArray(new Class<?>[0]);
+    }
+
+    @FunctionalInterface
+    private interface TargetInvocation {
+        Object invoke(Object target, Method method, Object[] args) throws Throwable;
+    }
+}
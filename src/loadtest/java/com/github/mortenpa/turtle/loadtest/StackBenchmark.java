@@ -0,0 +1,241 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Compares the servlet stack (Tomcat, JDBC) with the reactive stack (Netty, R2DBC) of the customer API.
+
+    Starts the application once per stack in this JVM and seeds it with customers. Fast clients then fetch random
+    customers as fast as they can (closed model) while slow clients create customers and send the request body a few
+    bytes at a time, like clients on a bad mobile connection. Reports the throughput and latency of the fast clients,
+    the creates the slow clients got through and the peak number of platform threads in the JVM.
+
+    ./gradlew stackBenchmark -Pargs="--clients=2000 --slow-clients=500 --duration=30"
+ */
+public class StackBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = intArgument(args, "--clients", 1000);
+        int slowClients = intArgument(args, "--slow-clients", 300);
+        int slowClientDelayMillis = intArgument(args, "--slow-client-delay-ms", 100);
+        int durationSeconds = intArgument(args, "--duration", 20);
+        int warmupSeconds = intArgument(args, "--warmup", 5);
+        int customers = intArgument(args, "--customers", 10_000);
+
+        System.out.printf("clients=%d slow-clients=%d slow-client-delay=%dms duration=%ds warmup=%ds customers=%d%n",
+                clients, slowClients, slowClientDelayMillis, durationSeconds, warmupSeconds, customers);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<String> report = new ArrayList<>();
+        for (boolean reactive : new boolean[] {false, true}) {
+            try (ConfigurableApplicationContext context = start(reactive)) {
+                int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+                String baseUrl = "http://localhost:" + port + "/api/customers";
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                seed(client, baseUrl, customers);
+                run(client, baseUrl, port, clients, 0, slowClientDelayMillis, warmupSeconds, customers);
+
+                threads.resetPeakThreadCount();
+                Result result = run(client, baseUrl, port, clients, slowClients, slowClientDelayMillis, durationSeconds, customers);
+                report.add((reactive ? "reactive" : "servlet ") + "  " + result + "  peak platform threads " + threads.getPeakThreadCount());
+            }
+        }
+
+        System.out.println();
+        report.forEach(System.out::println);
+    }
+
+    private static ConfigurableApplicationContext start(boolean reactive) {
+        String database = "benchmark-" + (reactive ? "reactive" : "servlet");
+        return new SpringApplicationBuilder(TurtleApplication.class)
+                .profiles(reactive ? new String[] {"reactive"} : new String[0])
+                .properties(
+                        "server.port=0",
+                        // a fresh database per stack, both datasources point at it
+                        "spring.datasource.url=jdbc:h2:mem:" + database,
+                        "spring.r2dbc.url=r2dbc:h2:mem:///" + database,
+                        "spring.cache.type=none",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        "turtleman.search.index-enabled=false"
+                )
+                .run();
+    }
+
+    // the bulk endpoint is servlet only, so both stacks are seeded one customer at a time
+    private static void seed(HttpClient client, String baseUrl, int customers) throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(32)) {
+            for (int i = 0; i < customers; i++) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(customerJson("load" + i)))
+                        .build();
+                futures.add(executor.submit(() -> client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()));
+            }
+        }
+        for (Future<Integer> future : futures) {
+            if (future.get() != 201) {
+                throw new IllegalStateException("Seeding failed with status " + future.get());
+            }
+        }
+    }
+
+    private static Result run(HttpClient client, String baseUrl, int port, int clients, int slowClients,
+                              int slowClientDelayMillis, int durationSeconds, int customers) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+        List<Future<long[]>> futures = new ArrayList<>();
+        AtomicLong slowCreates = new AtomicLong();
+
+        // every client is a virtual thread, so the client side is never what runs out of threads
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < slowClients; i++) {
+                int slowClient = i;
+                executor.submit(() -> {
+                    int request = 0;
+                    while (System.nanoTime() < deadline) {
+                        String email = "slow" + slowClient + "-" + request++ + "-" + System.nanoTime();
+                        if (trickleCreate(port, customerJson(email), slowClientDelayMillis)) {
+                            slowCreates.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    long errors = 0;
+                    while (System.nanoTime() < deadline) {
+                        // ids are generated from 1, the seeded customers are the first ones
+                        long id = ThreadLocalRandom.current().nextLong(1, customers + 1);
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + id))
+                                .timeout(Duration.ofSeconds(10))
+                                .GET()
+                                .build();
+
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors++;
+                                continue;
+                            }
+                        } catch (Exception exception) {
+                            errors++;
+                            continue;
+                        }
+
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    // the last element carries the error count
+                    long[] result = Arrays.copyOf(latencies, count + 1);
+                    result[count] = errors;
+                    return result;
+                }));
+            }
+        }
+
+        List<long[]> perClient = new ArrayList<>();
+        long errors = 0;
+        for (Future<long[]> future : futures) {
+            long[] result = future.get();
+            errors += result[result.length - 1];
+            perClient.add(Arrays.copyOf(result, result.length - 1));
+        }
+
+        long[] latencies = perClient.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(latencies, errors, slowCreates.get(), durationSeconds);
+    }
+
+    // a plain socket, so the body really arrives in pieces instead of being buffered by an HTTP client
+    private static boolean trickleCreate(int port, String body, int delayMillis) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String headers = "POST /api/customers HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(30_000);
+            OutputStream output = socket.getOutputStream();
+            output.write(headers.getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+
+            for (int offset = 0; offset < bytes.length; offset += 8) {
+                output.write(bytes, offset, Math.min(8, bytes.length - offset));
+                output.flush();
+                Thread.sleep(delayMillis);
+            }
+
+            InputStream input = socket.getInputStream();
+            byte[] statusLine = input.readNBytes("HTTP/1.1 201".length());
+            return new String(statusLine, StandardCharsets.US_ASCII).equals("HTTP/1.1 201");
+        } catch (Exception exception) {
+            return false;
+        }
+    }
+
+    private static String customerJson(String emailName) {
+        return "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"email\":\"" + emailName + "@turtle.sea\"}";
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return Integer.parseInt(arg.substring(name.length() + 1));
+            }
+        }
+        return defaultValue;
+    }
+
+    private record Result(long[] sortedLatencies, long errors, long slowCreates, int durationSeconds) {
+
+        private double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile / 100 * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.0f req/s  p50 %7.2f ms  p99 %7.2f ms  p99.9 %7.2f ms  max %7.2f ms  errors %d  slow creates %d",
+                    (double) sortedLatencies.length / durationSeconds,
+                    percentileMillis(50), percentileMillis(99), percentileMillis(99.9), percentileMillis(100), errors, slowCreates);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Measures the time from launching the application until it answers its first API request.
+
+    Every run is a fresh JVM started from the unpacked boot jar in --cds-dir (see the extractBootJar task),
+    so class loading is measured as it happens on a new pod. Modes:
+        default     the default profile
+        fast-start  the fast-start profile
+        cds         the fast-start profile with the AppCDS archive from the cdsArchive task
+    Reports the median and the slowest run per mode. With --max-ms the benchmark exits with 1 when the median
+    of any mode is slower than that, so it can guard against startup regressions in CI.
+
+    ./gradlew startupBenchmark -Pargs="--runs=10 --modes=fast-start,cds --max-ms=4000"
+ */
+public class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    public static void main(String[] args) throws Exception {
+        Path cdsDir = Path.of(stringArgument(args, "--cds-dir", "build/cds"));
+        String jar = stringArgument(args, "--jar", "turtle-1.0.0.jar");
+        int runs = Integer.parseInt(stringArgument(args, "--runs", "5"));
+        long maxMillis = Long.parseLong(stringArgument(args, "--max-ms", "0"));
+        List<String> modes = Arrays.asList(stringArgument(args, "--modes", "default,fast-start,cds").split(","));
+
+        System.out.printf("cds-dir=%s runs=%d modes=%s%n", cdsDir.toAbsolutePath(), runs, modes);
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        List<String> report = new ArrayList<>();
+        boolean regression = false;
+        for (String mode : modes) {
+            if (mode.equals("cds") && !Files.exists(cdsDir.resolve("turtle.jsa"))) {
+                report.add(String.format("%-10s  skipped, run the cdsArchive task first", mode));
+                continue;
+            }
+
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = timeToFirstRequest(client, cdsDir, jar, mode);
+            }
+            Arrays.sort(millis);
+            long median = millis[runs / 2];
+            regression |= maxMillis > 0 && median > maxMillis;
+            report.add(String.format("%-10s  median %6d ms  slowest %6d ms", mode, median, millis[runs - 1]));
+        }
+
+        report.forEach(System.out::println);
+        if (regression) {
+            System.out.println("Time to first request is above " + maxMillis + " ms");
+            System.exit(1);
+        }
+    }
+
+    private static long timeToFirstRequest(HttpClient client, Path cdsDir, String jar, String mode) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if (mode.equals("cds")) {
+            command.add("-XX:SharedArchiveFile=turtle.jsa");
+        }
+        command.addAll(List.of("-jar", jar, "--server.port=" + port, "--logging.level.root=warn"));
+        if (!mode.equals("default")) {
+            command.add("--spring.profiles.active=fast-start");
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/customers?limit=1"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        long startTime = System.nanoTime();
+        // the same working directory as the training run, the archive is only used with the same classpath
+        Process process = new ProcessBuilder(command)
+                .directory(cdsDir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(new File(cdsDir.toFile(), "startup-benchmark-" + mode + ".err"))
+                .start();
+        try {
+            long deadline = startTime + STARTUP_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode + " exited with " + process.exitValue() + ", see its .err file in " + cdsDir);
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - startTime) / 1_000_000;
+                    }
+                } catch (Exception exception) {
+                    // not listening yet
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException(mode + " did not answer within " + STARTUP_TIMEOUT);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String stringArgument(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+}
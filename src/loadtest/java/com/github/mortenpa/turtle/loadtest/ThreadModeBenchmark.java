@@ -0,0 +1,186 @@
+package com.github.mortenpa.turtle.loadtest;
+
+import com.github.mortenpa.turtle.TurtleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+    Compares request handling on platform threads with request handling on virtual threads.
+
+    Starts the application once per mode in this JVM, seeds it with customers and then has a fixed number of clients
+    fetch random customers as fast as they can (closed model). Reports throughput, latency percentiles and errors.
+    The customer cache is off so that every request reaches the database, and every statement is delayed
+    by --db-latency-ms to stand in for a database across the network.
+
+    ./gradlew threadModeBenchmark -Pargs="--clients=1000 --duration=30 --db-latency-ms=5"
+ */
+public class ThreadModeBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = intArgument(args, "--clients", 500);
+        int durationSeconds = intArgument(args, "--duration", 20);
+        int warmupSeconds = intArgument(args, "--warmup", 5);
+        int customers = intArgument(args, "--customers", 10_000);
+        int dbLatencyMillis = intArgument(args, "--db-latency-ms", 5);
+        int poolSize = intArgument(args, "--pool-size", 20);
+
+        System.out.printf("clients=%d duration=%ds warmup=%ds customers=%d db-latency=%dms pool-size=%d%n",
+                clients, durationSeconds, warmupSeconds, customers, dbLatencyMillis, poolSize);
+
+        List<String> report = new ArrayList<>();
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            try (ConfigurableApplicationContext context = start(virtualThreads, dbLatencyMillis, poolSize)) {
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/customers";
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                seed(client, baseUrl, customers);
+                run(client, baseUrl, clients, warmupSeconds, customers);
+                Result result = run(client, baseUrl, clients, durationSeconds, customers);
+                report.add((virtualThreads ? "virtual " : "platform") + "  " + result);
+            }
+        }
+
+        System.out.println();
+        report.forEach(System.out::println);
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtualThreads, int dbLatencyMillis, int poolSize) {
+        return new SpringApplicationBuilder(TurtleApplication.class)
+                .initializers(context -> context.getBeanFactory().addBeanPostProcessor(new SimulatedLatencyDataSource(dbLatencyMillis)))
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        // a fresh database per mode
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + (virtualThreads ? "virtual" : "platform"),
+                        "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "spring.cache.type=none",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        "turtleman.search.index-enabled=false",
+                        // the benchmark measures the threads, not the request limit in front of them
+                        "turtleman.virtual-threads.max-concurrent-requests=100000"
+                )
+                .run();
+    }
+
+    private static void seed(HttpClient client, String baseUrl, int customers) throws Exception {
+        for (int start = 0; start < customers; start += SEED_BATCH_SIZE) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = start; i < Math.min(start + SEED_BATCH_SIZE, customers); i++) {
+                if (i > start) {
+                    body.append(',');
+                }
+                body.append("{\"operation\":\"CREATE\",\"customer\":{\"firstName\":\"Load\",\"lastName\":\"Test\",\"email\":\"load")
+                        .append(i).append("@turtle.sea\"}}");
+            }
+            body.append(']');
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/_bulk"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+            }
+        }
+    }
+
+    // every client is a virtual thread, so the client side is never what runs out of threads
+    private static Result run(HttpClient client, String baseUrl, int clients, int durationSeconds, int customers) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+        List<Future<long[]>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    long errors = 0;
+                    while (System.nanoTime() < deadline) {
+                        // ids are generated from 1, the seeded customers are the first ones
+                        long id = ThreadLocalRandom.current().nextLong(1, customers + 1);
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).GET().build();
+
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors++;
+                                continue;
+                            }
+                        } catch (Exception exception) {
+                            errors++;
+                            continue;
+                        }
+
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    // the last element carries the error count
+                    long[] result = Arrays.copyOf(latencies, count + 1);
+                    result[count] = errors;
+                    return result;
+                }));
+            }
+        }
+
+        List<long[]> perClient = new ArrayList<>();
+        long errors = 0;
+        for (Future<long[]> future : futures) {
+            long[] result = future.get();
+            errors += result[result.length - 1];
+            perClient.add(Arrays.copyOf(result, result.length - 1));
+        }
+
+        long[] latencies = perClient.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(latencies, errors, durationSeconds);
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return Integer.parseInt(arg.substring(name.length() + 1));
+            }
+        }
+        return defaultValue;
+    }
+
+    private record Result(long[] sortedLatencies, long errors, int durationSeconds) {
+
+        private double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile / 100 * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.0f req/s  p50 %7.2f ms  p99 %7.2f ms  p99.9 %7.2f ms  max %7.2f ms  errors %d",
+                    (double) sortedLatencies.length / durationSeconds,
+                    percentileMillis(50), percentileMillis(99), percentileMillis(99.9), percentileMillis(100), errors);
+        }
+    }
+}
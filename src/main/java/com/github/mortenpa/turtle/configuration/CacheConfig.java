@@ -0,0 +1,11 @@
+package com.github.mortenpa.turtle.configuration;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// the caches themselves are configured through the spring.cache properties
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+}
@@ -0,0 +1,48 @@
+package com.github.mortenpa.turtle.configuration;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/*
+    Wraps the JDBC DataSource in a datasource-proxy that sees every statement the application executes.
+
+    Each statement is counted for the request that executed it (X-Query-Count with turtleman.timing.query-count-header,
+    the tests use it for statement budgets per endpoint). Statements slower than turtleman.query-log.slow-threshold
+    are logged with their H2 plan, at most one per turtleman.query-log.min-interval, see QueryLogListener.
+    The reactive profile goes through R2DBC and is not covered.
+ */
+@Configuration
+@ConditionalOnProperty(name = "turtleman.query-log.enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceProxyConfig {
+
+    // static, a post processor has to be created before the rest of the configuration
+    @Bean
+    public static BeanPostProcessor dataSourceProxyPostProcessor(
+            @Value("${turtleman.query-log.slow-threshold:PT0.1S}") Duration slowThreshold,
+            @Value("${turtleman.query-log.explain:true}") boolean explain,
+            @Value("${turtleman.query-log.min-interval:PT10S}") Duration minInterval
+    ) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ProxyDataSource) {
+                    return bean;
+                }
+                // plans are captured on the unwrapped DataSource, so they are neither counted nor logged themselves
+                QueryLogListener listener = new QueryLogListener(dataSource, slowThreshold, explain, minInterval);
+                return ProxyDataSourceBuilder.create(dataSource)
+                        .name(beanName)
+                        .listener(listener)
+                        .build();
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.mortenpa.turtle.configuration;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+    Part of the fast-start profile, defers the OpenAPI documentation until it is first requested.
+
+    Every springdoc bean and SwaggerDocConfig is made lazy, so they are created with the first request
+    to /v3/api-docs or /turtledoc instead of during startup. Controllers are looked up by name when a request comes in,
+    so the documentation endpoints work as before, the first request to them is just slower.
+    The few springdoc beans that Spring MVC collects on startup, like its WebMvcConfigurer, are still created eagerly.
+ */
+@Configuration
+@ConditionalOnProperty(name = "turtleman.fast-start.lazy-api-docs", havingValue = "true")
+public class FastStartConfig {
+
+    private static final String SPRINGDOC_PACKAGE = "org.springdoc.";
+
+    // static, a BeanFactoryPostProcessor has to exist before the configuration classes are instantiated
+    @Bean
+    public static BeanFactoryPostProcessor lazyApiDocs() {
+        return beanFactory -> {
+            for (String beanName : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+                String declaringClass = declaringClassName(definition);
+                if (declaringClass != null
+                        && (declaringClass.startsWith(SPRINGDOC_PACKAGE) || declaringClass.equals(SwaggerDocConfig.class.getName()))) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    // the class of a component, or the configuration class declaring a @Bean method
+    private static String declaringClassName(BeanDefinition definition) {
+        if (definition instanceof AnnotatedBeanDefinition annotated && annotated.getFactoryMethodMetadata() != null) {
+            return annotated.getFactoryMethodMetadata().getDeclaringClassName();
+        }
+        return definition.getBeanClassName();
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.mortenpa.turtle.configuration;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.HexFormat;
+
+/*
+    Skips Liquibase on startup when the changelog has not changed since it was last applied to the database.
+
+    Liquibase itself only applies new changesets, but it still takes its lock, parses the changelog and validates
+    every checksum against DATABASECHANGELOG on each start. With a durable database that is pure overhead on
+    a restart. After a successful run the checksum of the changelog is stored in the database, on the next start
+    Liquibase only runs if the changelog, its contexts or its labels differ from that.
+
+    Only the master changelog is hashed, changelogs it includes have to be added here when there are any.
+ */
+@Component
+@ConditionalOnProperty(name = "turtleman.liquibase.skip-unchanged", havingValue = "true")
+public class LiquibaseChangelogMarker implements BeanPostProcessor, ResourceLoaderAware {
+
+    private static final Logger log = LoggerFactory.getLogger(LiquibaseChangelogMarker.class);
+
+    private static final String MARKER_TABLE = "turtleman_changelog_marker";
+
+    private ResourceLoader resourceLoader;
+    // the checksum to store once Liquibase ran, null when it was skipped
+    private String pendingChecksum;
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof SpringLiquibase liquibase && liquibase.isShouldRun()) {
+            String checksum = checksum(liquibase);
+            if (checksum.equals(readMarker(liquibase.getDataSource()))) {
+                log.info("Changelog {} is unchanged since it was last applied, skipping Liquibase", liquibase.getChangeLog());
+                liquibase.setShouldRun(false);
+            }
+            else {
+                pendingChecksum = checksum;
+            }
+        }
+        return bean;
+    }
+
+    // runs after SpringLiquibase.afterPropertiesSet, which fails the startup if an update fails
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof SpringLiquibase liquibase && pendingChecksum != null) {
+            writeMarker(liquibase.getDataSource(), pendingChecksum);
+            pendingChecksum = null;
+        }
+        return bean;
+    }
+
+    private String checksum(SpringLiquibase liquibase) {
+        try (InputStream changelog = resourceLoader.getResource(liquibase.getChangeLog()).getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(StreamUtils.copyToByteArray(changelog));
+            digest.update(("|" + liquibase.getContexts() + "|" + liquibase.getLabelFilter()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("Could not hash the changelog " + liquibase.getChangeLog(), exception);
+        }
+    }
+
+    // null if there is no marker yet, Liquibase then runs as usual
+    private String readMarker(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            createMarkerTable(statement);
+            try (ResultSet resultSet = statement.executeQuery("SELECT checksum FROM " + MARKER_TABLE)) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        } catch (SQLException exception) {
+            log.warn("Could not read the changelog marker, running Liquibase: {}", exception.getMessage());
+            return null;
+        }
+    }
+
+    private void writeMarker(DataSource dataSource, String checksum) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            createMarkerTable(statement);
+            statement.executeUpdate("DELETE FROM " + MARKER_TABLE);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + MARKER_TABLE + " (checksum) VALUES (?)")) {
+                insert.setString(1, checksum);
+                insert.executeUpdate();
+            }
+        } catch (SQLException exception) {
+            // not fatal, Liquibase just runs again on the next start
+            log.warn("Could not write the changelog marker: {}", exception.getMessage());
+        }
+    }
+
+    private static void createMarkerTable(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE IF NOT EXISTS " + MARKER_TABLE + " (checksum VARCHAR(64) NOT NULL)");
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.mortenpa.turtle.configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+    Metrics beyond what Spring Boot registers by itself.
+    Hikari pool metrics (hikaricp.*), cache metrics and Hibernate statistics (hibernate.*) are bound automatically,
+    the latter because hibernate.generate_statistics is on. Measure the overhead with ./gradlew loadTest -Pargs="--metrics=on,off".
+ */
+@Configuration
+public class MetricsConfig {
+
+    // times every method of classes annotated with @Timed, like CustomerController and CustomerService
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
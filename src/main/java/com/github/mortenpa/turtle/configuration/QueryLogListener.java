@@ -0,0 +1,157 @@
+package com.github.mortenpa.turtle.configuration;
+
+import com.github.mortenpa.turtle.timing.RequestTimings;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Counts statements for the current request and logs the slow ones.
+
+    A slow statement is logged with its H2 plan. SELECTs are explained with EXPLAIN ANALYZE, which runs them again
+    and reports the rows each step read. Anything that writes is only explained, running it a second time would
+    write twice. The plan is captured on a connection of its own in a background thread, so the request that ran
+    into the slow statement does not wait for it, and in a transaction that is rolled back.
+
+    At most one slow statement is logged per interval, the ones in between are counted and reported with the next.
+ */
+class QueryLogListener implements QueryExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLogListener.class);
+
+    private final DataSource dataSource;
+    private final long slowThresholdMillis;
+    private final boolean explain;
+    private final long minIntervalNanos;
+
+    private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong suppressed = new AtomicLong();
+    // a single plan capture at a time, the rest are logged without a plan
+    private final ExecutorService explainExecutor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+            runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    QueryLogListener(DataSource dataSource, Duration slowThreshold, boolean explain, Duration minInterval) {
+        this.dataSource = dataSource;
+        this.slowThresholdMillis = slowThreshold.toMillis();
+        this.explain = explain;
+        this.minIntervalNanos = minInterval.toNanos();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        // a batch is a single round trip, and counted as one statement
+        RequestTimings.countStatement();
+
+        if (execInfo.getElapsedTime() < slowThresholdMillis || !acquireLogPermit()) {
+            return;
+        }
+
+        // the plan is captured after the statement has moved on, so take what it needs now
+        long elapsedMillis = execInfo.getElapsedTime();
+        int batchSize = execInfo.isBatch() ? execInfo.getBatchSize() : 0;
+        String query = queryInfoList.get(0).getQuery();
+        long suppressedSinceLast = suppressed.getAndSet(0);
+        if (!explain || batchSize > 0) {
+            logSlowQuery(elapsedMillis, batchSize, query, suppressedSinceLast, null);
+            return;
+        }
+
+        List<List<ParameterSetOperation>> parametersList = queryInfoList.get(0).getParametersList();
+        List<ParameterSetOperation> parameters = parametersList.isEmpty() ? List.of() : List.copyOf(parametersList.get(0));
+        try {
+            explainExecutor.execute(() ->
+                    logSlowQuery(elapsedMillis, batchSize, query, suppressedSinceLast, capturePlan(query, parameters)));
+        } catch (RejectedExecutionException exception) {
+            logSlowQuery(elapsedMillis, batchSize, query, suppressedSinceLast, null);
+        }
+    }
+
+    private boolean acquireLogPermit() {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + minIntervalNanos)) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private void logSlowQuery(long elapsedMillis, int batchSize, String query, long suppressedSinceLast, String plan) {
+        log.warn("Slow query took {} ms{}: {}{}",
+                elapsedMillis,
+                batchSize > 0 ? " (batch of " + batchSize + ")" : "",
+                query,
+                plan == null ? "" : System.lineSeparator() + plan);
+        if (suppressedSinceLast > 0) {
+            log.warn("{} more slow queries since the last one were not logged", suppressedSinceLast);
+        }
+    }
+
+    private String capturePlan(String query, List<ParameterSetOperation> parameters) {
+        String explainQuery = (isReadOnly(query.strip()) ? "EXPLAIN ANALYZE " : "EXPLAIN ") + query.strip();
+
+        try (Connection connection = dataSource.getConnection()) {
+            if (!"H2".equals(connection.getMetaData().getDatabaseProductName())) {
+                return null;
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(explainQuery)) {
+                // replays the setters the application called, setNull and typed setters included
+                for (ParameterSetOperation operation : parameters) {
+                    operation.getMethod().invoke(statement, operation.getArgs());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1));
+                    }
+                    return plan.toString();
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | ReflectiveOperationException exception) {
+            log.debug("Could not capture the plan of a slow query: {}", exception.getMessage());
+            return null;
+        }
+    }
+
+    // data change delta tables (SELECT ... FROM FINAL TABLE (UPDATE ...)) start with SELECT but write
+    private static boolean isReadOnly(String query) {
+        String upperCaseQuery = query.toUpperCase(Locale.ROOT);
+        return upperCaseQuery.startsWith("SELECT")
+                && !upperCaseQuery.contains("FINAL TABLE")
+                && !upperCaseQuery.contains("NEW TABLE")
+                && !upperCaseQuery.contains("OLD TABLE");
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.mortenpa.turtle.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// periodic maintenance tasks, like rebuilding the email filter
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+}
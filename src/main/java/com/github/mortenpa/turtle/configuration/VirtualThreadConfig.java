@@ -0,0 +1,32 @@
+package com.github.mortenpa.turtle.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+    Only active with spring.threads.virtual.enabled=true, which makes Tomcat run every request on its own virtual thread.
+    Tomcat's worker pool no longer limits how many requests run at once, so the API gets a limit of its own.
+    The JDBC pool stays at spring.datasource.hikari.maximum-pool-size either way.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${turtleman.virtual-threads.max-concurrent-requests:400}") int maxConcurrentRequests,
+            @Value("${turtleman.virtual-threads.acquire-timeout:PT1S}") Duration acquireTimeout
+    ) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(maxConcurrentRequests, acquireTimeout));
+        // actuator stays reachable when the API is saturated
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
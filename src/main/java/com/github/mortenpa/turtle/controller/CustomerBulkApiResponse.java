@@ -0,0 +1,45 @@
+package com.github.mortenpa.turtle.controller;
+
+import com.github.mortenpa.turtle.data.dto.CustomerBulkItemResult;
+
+import java.util.List;
+
+public class CustomerBulkApiResponse {
+    // true only if every single operation in the bulk request succeeded
+    boolean success;
+    private String message;
+    List<CustomerBulkItemResult> results;
+
+    public CustomerBulkApiResponse() {}
+
+    public CustomerBulkApiResponse(boolean success, String message, List<CustomerBulkItemResult> results) {
+        this.success = success;
+        this.message = message;
+        this.results = results;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<CustomerBulkItemResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<CustomerBulkItemResult> results) {
+        this.results = results;
+    }
+
+}
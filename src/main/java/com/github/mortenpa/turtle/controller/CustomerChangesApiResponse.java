@@ -0,0 +1,70 @@
+package com.github.mortenpa.turtle.controller;
+
+import com.github.mortenpa.turtle.data.dto.CustomerChange;
+
+import java.util.List;
+
+public class CustomerChangesApiResponse {
+    boolean success;
+    private String message;
+    List<CustomerChange> changes;
+    // pass this back as since on the next poll
+    private String nextCursor;
+    // more changes are waiting, poll again right away
+    private boolean hasMore;
+
+    public CustomerChangesApiResponse() {}
+
+    public CustomerChangesApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerChangesApiResponse(boolean success, List<CustomerChange> changes, String nextCursor, boolean hasMore) {
+        this.success = success;
+        this.changes = changes;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<CustomerChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<CustomerChange> changes) {
+        this.changes = changes;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+}
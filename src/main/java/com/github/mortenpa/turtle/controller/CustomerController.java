@@ -1,27 +1,99 @@
 package com.github.mortenpa.turtle.controller;
 
+import com.github.mortenpa.turtle.data.dto.CustomerBulkItemResult;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerChanges;
 import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerFileFormat;
+import com.github.mortenpa.turtle.data.dto.CustomerImportResult;
+import com.github.mortenpa.turtle.data.dto.CustomerMultiGet;
+import com.github.mortenpa.turtle.data.dto.CustomerPage;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
+import com.github.mortenpa.turtle.error.InvalidRequestParameterException;
+import com.github.mortenpa.turtle.service.CustomerBulkService;
+import com.github.mortenpa.turtle.service.CustomerChangeService;
+import com.github.mortenpa.turtle.service.CustomerEventDispatcher;
+import com.github.mortenpa.turtle.service.CustomerExportService;
+import com.github.mortenpa.turtle.service.CustomerImportService;
+import com.github.mortenpa.turtle.service.CustomerSearchService;
 import com.github.mortenpa.turtle.service.CustomerService;
+import com.github.mortenpa.turtle.service.CustomerStatsService;
+import io.micrometer.core.annotation.Timed;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildBulkApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildChangesApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildEmailAvailabilityApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildImportApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildMultiGetApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildPageApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildStatsApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.eTag;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.isWildcard;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.parseVersions;
 
 @RestController
 @RequestMapping("/api/customers")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Timed("turtleman.customer.controller")
 public class CustomerController {
 
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_EMAIL_CHECKS = 1000;
+    public static final int MAX_SEARCH_RESULTS = 100;
+    public static final int MAX_MULTI_GET_IDS = 1000;
+
+    private static final Pattern IMPORT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
     private final CustomerService customerService;
+    private final CustomerBulkService customerBulkService;
+    private final CustomerExportService customerExportService;
+    private final CustomerImportService customerImportService;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerChangeService customerChangeService;
+    private final CustomerEventDispatcher customerEventDispatcher;
+    private final CustomerStatsService customerStatsService;
 
     @Autowired
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(
+            CustomerService customerService,
+            CustomerBulkService customerBulkService,
+            CustomerExportService customerExportService,
+            CustomerImportService customerImportService,
+            CustomerSearchService customerSearchService,
+            CustomerChangeService customerChangeService,
+            CustomerEventDispatcher customerEventDispatcher,
+            CustomerStatsService customerStatsService
+    ) {
         this.customerService = customerService;
+        this.customerBulkService = customerBulkService;
+        this.customerExportService = customerExportService;
+        this.customerImportService = customerImportService;
+        this.customerSearchService = customerSearchService;
+        this.customerChangeService = customerChangeService;
+        this.customerEventDispatcher = customerEventDispatcher;
+        this.customerStatsService = customerStatsService;
     }
 
     public CustomerEntity createCustomerEntityFromDTO(CustomerDTO customerDTO) {
@@ -47,10 +119,139 @@ public class CustomerController {
         }
     }
 
+    @GetMapping
+    public ResponseEntity<CustomerPageApiResponse> getCustomers(
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        CustomerSortField sortField = CustomerSortField.fromColumnName(sort)
+                .orElseThrow(() -> new InvalidRequestParameterException("Unknown sort, expected id, created_datetime or modified_datetime"));
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestParameterException("limit has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        CustomerPage page = customerService.getPage(sortField, pageToken, limit);
+        return buildPageApiResponse(true, page, HttpStatus.OK);
+    }
+
+    // type-ahead search over first and last names, best matches first, typos in longer names are tolerated
+    @GetMapping("/search")
+    public ResponseEntity<CustomerPageApiResponse> searchCustomers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        if (q.isBlank()) {
+            throw new InvalidRequestParameterException("q can't be blank");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new InvalidRequestParameterException("limit has to be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+
+        List<CustomerEntity> customers = customerSearchService.search(q, limit);
+        return buildPageApiResponse(true, new CustomerPage(customers, null), HttpStatus.OK);
+    }
+
+    // from in-memory counters, never scans the table, 503 until they are built after a restart
+    @GetMapping("/stats")
+    public ResponseEntity<CustomerStatsApiResponse> getStats() {
+        return buildStatsApiResponse(true, customerStatsService.getStats(), HttpStatus.OK);
+    }
+
+    // customers changed since the cursor, deleted ones as tombstones, oldest first
+    @GetMapping("/changes")
+    public ResponseEntity<CustomerChangesApiResponse> getChanges(
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestParameterException("limit has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        CustomerChanges changes = customerChangeService.getChanges(since, limit);
+        return buildChangesApiResponse(true, changes, HttpStatus.OK);
+    }
+
+    // created, updated and deleted events as Server-Sent Events, a reconnecting client resumes after its Last-Event-ID
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        Long resumeAfter = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException exception) {
+                throw new InvalidRequestParameterException("Last-Event-ID has to be an event id");
+            }
+        }
+        return customerEventDispatcher.subscribe(resumeAfter);
+    }
+
+    // rows are written to the response as they are read from the database
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        CustomerFileFormat fileFormat = CustomerFileFormat.fromName(format)
+                .orElseThrow(() -> new InvalidRequestParameterException("Unknown format, expected ndjson or csv"));
+
+        StreamingResponseBody body = outputStream -> customerExportService.export(fileFormat, outputStream);
+        String fileName = "customers." + fileFormat.name().toLowerCase();
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    // the request body is the raw file, it is parsed while it is being uploaded
+    // posting the same file with the same importId resumes an interrupted import
+    @PostMapping("/import")
+    public ResponseEntity<CustomerImportApiResponse> importCustomers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String importId,
+            InputStream inputStream
+    ) throws IOException {
+        CustomerFileFormat fileFormat = CustomerFileFormat.fromName(format)
+                .orElseThrow(() -> new InvalidRequestParameterException("Unknown format, expected ndjson or csv"));
+
+        if (importId == null) {
+            importId = UUID.randomUUID().toString();
+        }
+        else if (!IMPORT_ID_PATTERN.matcher(importId).matches()) {
+            throw new InvalidRequestParameterException("importId may only contain up to 64 letters, digits, '-' and '_'");
+        }
+
+        CustomerImportResult result = customerImportService.importCustomers(importId, fileFormat, inputStream);
+        boolean success = result.getProgress().getRejectedRows() == 0;
+        return buildImportApiResponse(success, result.getProgress(), result.getRejects(), HttpStatus.OK);
+    }
+
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<CustomerImportApiResponse> getImport(@PathVariable String importId) {
+        Optional<CustomerImportEntity> progress = customerImportService.getImport(importId);
+
+        if (progress.isPresent()) {
+            return buildImportApiResponse(true, progress.get(), null, HttpStatus.OK);
+        }
+        else {
+            return buildImportApiResponse(false, "Import not found", HttpStatus.NOT_FOUND);
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<CustomerApiResponse> getCustomer(
-            @PathVariable long id
+            @PathVariable long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
+        // an unchanged customer is answered from its version alone, without loading or serializing it
+        if (ifNoneMatch != null) {
+            Optional<Long> version = customerService.getVersion(id);
+            if (version.isPresent() && (isWildcard(ifNoneMatch) || parseVersions(ifNoneMatch, true).contains(version.get()))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(version.get())).build();
+            }
+        }
+
         Optional<CustomerEntity> fetchedCustomer = customerService.getById(id);
 
         if (fetchedCustomer.isPresent()) {
@@ -61,29 +262,83 @@ public class CustomerController {
         }
     }
 
+    // many customers at once instead of a request per id, /api/customers?ids=1,2,3
+    @GetMapping(params = "ids")
+    public ResponseEntity<CustomerMultiGetApiResponse> getCustomersByIds(
+            @RequestParam List<Long> ids
+    ) {
+        return multiGet(ids);
+    }
+
+    // the same with the ids in the body, for lists that don't fit into a URL
+    @PostMapping("/_mget")
+    public ResponseEntity<CustomerMultiGetApiResponse> getCustomersByIdsInBody(
+            @RequestBody List<Long> ids
+    ) {
+        return multiGet(ids);
+    }
+
+    private ResponseEntity<CustomerMultiGetApiResponse> multiGet(List<Long> ids) {
+        if (ids.size() > MAX_MULTI_GET_IDS) {
+            throw new InvalidRequestParameterException("At most " + MAX_MULTI_GET_IDS + " customers can be fetched at once");
+        }
+        if (ids.contains(null)) {
+            throw new InvalidRequestParameterException("Ids can't be null");
+        }
+
+        CustomerMultiGet multiGet = customerService.getByIds(ids);
+        return buildMultiGetApiResponse(true, multiGet, HttpStatus.OK);
+    }
+
+    // case-insensitive, surrounding whitespace is ignored
+    @GetMapping("/by-email/{email}")
+    public ResponseEntity<CustomerApiResponse> getCustomerByEmail(
+            @PathVariable String email
+    ) {
+        Optional<CustomerEntity> fetchedCustomer = customerService.getByEmail(email);
+
+        if (fetchedCustomer.isPresent()) {
+            return buildApiResponse(true, fetchedCustomer.get(), HttpStatus.OK);
+        }
+        else {
+            return buildApiResponse(false, "Customer not found", HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // emails that are certainly free are answered from memory, the rest with a single query
+    @PostMapping("/email-availability")
+    public ResponseEntity<CustomerEmailAvailabilityApiResponse> checkEmailAvailability(
+            @RequestBody List<String> emails
+    ) {
+        if (emails.size() > MAX_EMAIL_CHECKS) {
+            throw new InvalidRequestParameterException("At most " + MAX_EMAIL_CHECKS + " emails can be checked at once");
+        }
+        if (emails.contains(null)) {
+            throw new InvalidRequestParameterException("Emails can't be null");
+        }
+
+        Map<String, Boolean> availability = customerService.checkEmailAvailability(emails);
+        return buildEmailAvailabilityApiResponse(true, availability, HttpStatus.OK);
+    }
 
     @PutMapping("/{id}")
     public ResponseEntity<CustomerApiResponse> updateCustomer(
             @PathVariable long id,
-            @RequestBody @Valid CustomerDTO customerDTO
+            @RequestBody @Valid CustomerDTO customerDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) {
-
-        // start by checking for customer existence
         // PUT will only allow modification, not addition to db
-        if (customerService.getById(id).isEmpty()) {
-            return buildApiResponse(false, "Customer with the ID does not exist", HttpStatus.NOT_FOUND);
-        }
-
+        // the update itself tells us whether the customer existed, there is no separate existence check
+        // with If-Match the customer is only updated if it is unchanged since the client read it, otherwise 412
+        Set<Long> expectedVersions = ifMatch == null || isWildcard(ifMatch) ? null : parseVersions(ifMatch, false);
         CustomerEntity customer = createCustomerEntityFromDTO(customerDTO);
-        customer.setId(id); // set the customer id from the parameter
+        Optional<CustomerEntity> modifiedCustomer = customerService.modify(id, customer, expectedVersions);
 
-        CustomerEntity addedCustomer = customerService.addOrModify(customer);
-
-        if (addedCustomer == null) {
-            return buildApiResponse(false, "Customer modification failed", HttpStatus.NOT_FOUND);
+        if (modifiedCustomer.isEmpty()) {
+            return buildApiResponse(false, "Customer with the ID does not exist", HttpStatus.NOT_FOUND);
         }
         else {
-            return buildApiResponse(true, addedCustomer, HttpStatus.OK);
+            return buildApiResponse(true, modifiedCustomer.get(), HttpStatus.OK);
         }
     }
 
@@ -98,4 +353,21 @@ public class CustomerController {
         }
     }
 
+    // every operation gets its own result, a failing operation does not affect the others
+    @PostMapping("/_bulk")
+    public ResponseEntity<CustomerBulkApiResponse> bulkCustomers(
+            @RequestBody List<CustomerBulkOperationDTO> operations
+    ) {
+        if (operations.size() > customerBulkService.getMaxOperations()) {
+            String message = "Too many operations, at most " + customerBulkService.getMaxOperations() + " are allowed per request";
+            return buildBulkApiResponse(false, message, null, HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+
+        List<CustomerBulkItemResult> results = customerBulkService.execute(operations);
+        long succeeded = results.stream().filter(CustomerBulkItemResult::isSuccess).count();
+        String message = succeeded + " of " + results.size() + " operations succeeded";
+
+        return buildBulkApiResponse(succeeded == results.size(), message, results, HttpStatus.OK);
+    }
+
 }
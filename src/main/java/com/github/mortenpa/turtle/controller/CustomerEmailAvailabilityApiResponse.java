@@ -0,0 +1,47 @@
+package com.github.mortenpa.turtle.controller;
+
+import java.util.Map;
+
+public class CustomerEmailAvailabilityApiResponse {
+    boolean success;
+    private String message;
+    // email as requested -> true if no customer uses it yet
+    private Map<String, Boolean> availability;
+
+    public CustomerEmailAvailabilityApiResponse() {}
+
+    public CustomerEmailAvailabilityApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerEmailAvailabilityApiResponse(boolean success, Map<String, Boolean> availability) {
+        this.success = success;
+        this.availability = availability;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Map<String, Boolean> getAvailability() {
+        return availability;
+    }
+
+    public void setAvailability(Map<String, Boolean> availability) {
+        this.availability = availability;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.mortenpa.turtle.controller;
+
+import com.github.mortenpa.turtle.data.dto.CustomerImportReject;
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
+
+import java.util.List;
+
+public class CustomerImportApiResponse {
+    boolean success;
+    private String message;
+    CustomerImportEntity progress;
+    List<CustomerImportReject> rejects;
+
+    public CustomerImportApiResponse() {}
+
+    public CustomerImportApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerImportApiResponse(boolean success, CustomerImportEntity progress, List<CustomerImportReject> rejects) {
+        this.success = success;
+        this.progress = progress;
+        this.rejects = rejects;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public CustomerImportEntity getProgress() {
+        return progress;
+    }
+
+    public void setProgress(CustomerImportEntity progress) {
+        this.progress = progress;
+    }
+
+    public List<CustomerImportReject> getRejects() {
+        return rejects;
+    }
+
+    public void setRejects(List<CustomerImportReject> rejects) {
+        this.rejects = rejects;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.mortenpa.turtle.controller;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+import java.util.List;
+
+public class CustomerMultiGetApiResponse {
+    boolean success;
+    private String message;
+    List<CustomerEntity> customers;
+    // requested ids that no customer has
+    private List<Long> missingIds;
+
+    public CustomerMultiGetApiResponse() {}
+
+    public CustomerMultiGetApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerMultiGetApiResponse(boolean success, List<CustomerEntity> customers, List<Long> missingIds) {
+        this.success = success;
+        this.customers = customers;
+        this.missingIds = missingIds;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<CustomerEntity> getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(List<CustomerEntity> customers) {
+        this.customers = customers;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+
+}
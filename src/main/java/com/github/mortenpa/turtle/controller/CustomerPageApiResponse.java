@@ -0,0 +1,59 @@
+package com.github.mortenpa.turtle.controller;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+import java.util.List;
+
+public class CustomerPageApiResponse {
+    boolean success;
+    private String message;
+    List<CustomerEntity> customers;
+    // pass this back as pageToken to get the next page, null on the last page
+    private String nextPageToken;
+
+    public CustomerPageApiResponse() {}
+
+    public CustomerPageApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerPageApiResponse(boolean success, List<CustomerEntity> customers, String nextPageToken) {
+        this.success = success;
+        this.customers = customers;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public List<CustomerEntity> getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(List<CustomerEntity> customers) {
+        this.customers = customers;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+
+}
@@ -1,31 +1,59 @@
 package com.github.mortenpa.turtle.controller;
 
+import com.github.mortenpa.turtle.error.ChangeCursorExpiredException;
 import com.github.mortenpa.turtle.error.DuplicateEmailException;
+import com.github.mortenpa.turtle.error.ImportInProgressException;
+import com.github.mortenpa.turtle.error.InvalidRequestParameterException;
 import com.github.mortenpa.turtle.error.NullNotAllowedException;
+import com.github.mortenpa.turtle.error.PreconditionFailedException;
+import com.github.mortenpa.turtle.error.StatsNotReadyException;
+import com.github.mortenpa.turtle.reactive.ReactiveCustomerController;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildApiResponse;
 
-@ControllerAdvice(assignableTypes = CustomerController.class)
+@ControllerAdvice(assignableTypes = {CustomerController.class, ReactiveCustomerController.class})
 public class CustomerRestExceptionHandler {
 
     private static final Logger log = LoggerFactory.getLogger(CustomerRestExceptionHandler.class);
 
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public CustomerRestExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // one counter per handled exception type and status, see /actuator/metrics/turtleman.customer.errors
+    private ResponseEntity<CustomerApiResponse> buildErrorResponse(Exception exception, String message, HttpStatus status) {
+        Counter.builder("turtleman.customer.errors")
+                .description("Customer API requests that ended in an error response")
+                .tag("exception", exception.getClass().getSimpleName())
+                .tag("status", String.valueOf(status.value()))
+                .register(meterRegistry)
+                .increment();
+
+        return buildApiResponse(false, message, status);
+    }
 
     @ExceptionHandler(DuplicateEmailException.class)
     public ResponseEntity<CustomerApiResponse> handleDataDuplicateEmailException(DuplicateEmailException exception) {
         log.error("Duplicate email violation: {}", exception.getMessage(), exception);
 
-        return buildApiResponse(
-                false,
+        return buildErrorResponse(
+                exception,
                 "Failed due to email already being in use",
                 HttpStatus.CONFLICT
         );
@@ -35,19 +63,75 @@ public class CustomerRestExceptionHandler {
     public ResponseEntity<CustomerApiResponse> handleNullNotAllowedException(NullNotAllowedException exception) {
         log.error("Null property value violation: {}", exception.getMessage(), exception);
 
-        return buildApiResponse(
-                false,
+        return buildErrorResponse(
+                exception,
                 "Failed due to null values",
                 HttpStatus.BAD_REQUEST
         );
     }
 
+    @ExceptionHandler(InvalidRequestParameterException.class)
+    public ResponseEntity<CustomerApiResponse> handleInvalidRequestParameterException(InvalidRequestParameterException exception) {
+        log.warn("Invalid request parameter: {}", exception.getMessage());
+
+        // the message is safe to show, it only describes the request parameters
+        return buildErrorResponse(
+                exception,
+                exception.getMessage(),
+                HttpStatus.BAD_REQUEST
+        );
+    }
+
+    @ExceptionHandler(ChangeCursorExpiredException.class)
+    public ResponseEntity<CustomerApiResponse> handleChangeCursorExpiredException(ChangeCursorExpiredException exception) {
+        log.warn("Change cursor expired: {}", exception.getMessage());
+
+        return buildErrorResponse(
+                exception,
+                "Failed due to the cursor being older than the kept deletes, sync again without since",
+                HttpStatus.GONE
+        );
+    }
+
+    @ExceptionHandler(StatsNotReadyException.class)
+    public ResponseEntity<CustomerApiResponse> handleStatsNotReadyException(StatsNotReadyException exception) {
+        log.warn("Customer statistics not ready: {}", exception.getMessage());
+
+        return buildErrorResponse(
+                exception,
+                "Failed due to the customer statistics still being built, try again shortly",
+                HttpStatus.SERVICE_UNAVAILABLE
+        );
+    }
+
+    @ExceptionHandler(ImportInProgressException.class)
+    public ResponseEntity<CustomerApiResponse> handleImportInProgressException(ImportInProgressException exception) {
+        log.warn("Import conflict: {}", exception.getMessage());
+
+        return buildErrorResponse(
+                exception,
+                "Failed due to the import already running",
+                HttpStatus.CONFLICT
+        );
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<CustomerApiResponse> handlePreconditionFailedException(PreconditionFailedException exception) {
+        log.warn("Precondition failed: {}", exception.getMessage());
+
+        return buildErrorResponse(
+                exception,
+                "Failed due to the customer having been modified, fetch it again and retry",
+                HttpStatus.PRECONDITION_FAILED
+        );
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
     public ResponseEntity<CustomerApiResponse> handleConstraintViolationException(ConstraintViolationException exception) {
         log.error("Constraint violation: {}", exception.getMessage(), exception);
 
-        return buildApiResponse(
-                false,
+        return buildErrorResponse(
+                exception,
                 "Failed due to property validations, check for missing or badly formatted properties",
                 HttpStatus.BAD_REQUEST
         );
@@ -57,8 +141,20 @@ public class CustomerRestExceptionHandler {
     public ResponseEntity<CustomerApiResponse> handleMethodArgumentNotValidException(MethodArgumentNotValidException exception) {
         log.error("MethodArgumentNotValidException: {}", exception.getMessage(), exception);
 
-        return buildApiResponse(
-                false,
+        return buildErrorResponse(
+                exception,
+                "Failed due to invalid input, check for missing or badly formatted properties",
+                HttpStatus.BAD_REQUEST
+        );
+    }
+
+    // the reactive counterpart of MethodArgumentNotValidException
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<CustomerApiResponse> handleWebExchangeBindException(WebExchangeBindException exception) {
+        log.error("WebExchangeBindException: {}", exception.getMessage(), exception);
+
+        return buildErrorResponse(
+                exception,
                 "Failed due to invalid input, check for missing or badly formatted properties",
                 HttpStatus.BAD_REQUEST
         );
@@ -68,8 +164,8 @@ public class CustomerRestExceptionHandler {
     public ResponseEntity<CustomerApiResponse> handleAnyException(Exception exception) {
         log.error("Uncaught error: {}", exception.getMessage(), exception);
 
-        return buildApiResponse(
-                false,
+        return buildErrorResponse(
+                exception,
                 "Failed due to an unknown error",
                 HttpStatus.INTERNAL_SERVER_ERROR
         );
@@ -0,0 +1,87 @@
+package com.github.mortenpa.turtle.controller;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+public class CustomerStatsApiResponse {
+    boolean success;
+    private String message;
+    private long totalCustomers;
+    // UTC day -> customers created that day, oldest day first
+    private Map<LocalDate, Long> signupsPerDay;
+    // email domain -> customers, most customers first
+    private Map<String, Long> topEmailDomains;
+    // the counters are corrected from the database at this interval, they can be off in between
+    private OffsetDateTime reconciledDtime;
+
+    public CustomerStatsApiResponse() {}
+
+    public CustomerStatsApiResponse(boolean success, String message) {
+        this.success = success;
+        this.message = message;
+    }
+
+    public CustomerStatsApiResponse(
+            boolean success,
+            long totalCustomers,
+            Map<LocalDate, Long> signupsPerDay,
+            Map<String, Long> topEmailDomains,
+            OffsetDateTime reconciledDtime
+    ) {
+        this.success = success;
+        this.totalCustomers = totalCustomers;
+        this.signupsPerDay = signupsPerDay;
+        this.topEmailDomains = topEmailDomains;
+        this.reconciledDtime = reconciledDtime;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public long getTotalCustomers() {
+        return totalCustomers;
+    }
+
+    public void setTotalCustomers(long totalCustomers) {
+        this.totalCustomers = totalCustomers;
+    }
+
+    public Map<LocalDate, Long> getSignupsPerDay() {
+        return signupsPerDay;
+    }
+
+    public void setSignupsPerDay(Map<LocalDate, Long> signupsPerDay) {
+        this.signupsPerDay = signupsPerDay;
+    }
+
+    public Map<String, Long> getTopEmailDomains() {
+        return topEmailDomains;
+    }
+
+    public void setTopEmailDomains(Map<String, Long> topEmailDomains) {
+        this.topEmailDomains = topEmailDomains;
+    }
+
+    public OffsetDateTime getReconciledDtime() {
+        return reconciledDtime;
+    }
+
+    public void setReconciledDtime(OffsetDateTime reconciledDtime) {
+        this.reconciledDtime = reconciledDtime;
+    }
+
+}
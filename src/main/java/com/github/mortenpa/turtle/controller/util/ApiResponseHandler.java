@@ -1,10 +1,27 @@
 package com.github.mortenpa.turtle.controller.util;
 
 import com.github.mortenpa.turtle.controller.CustomerApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerBulkApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerChangesApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerEmailAvailabilityApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerImportApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerMultiGetApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerPageApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerStatsApiResponse;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkItemResult;
+import com.github.mortenpa.turtle.data.dto.CustomerChanges;
+import com.github.mortenpa.turtle.data.dto.CustomerImportReject;
+import com.github.mortenpa.turtle.data.dto.CustomerMultiGet;
+import com.github.mortenpa.turtle.data.dto.CustomerPage;
+import com.github.mortenpa.turtle.data.dto.CustomerStats;
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
+import java.util.Map;
+
 public class ApiResponseHandler {
 
     static public ResponseEntity<CustomerApiResponse> buildApiResponse(boolean success, String message, HttpStatus status) {
@@ -12,8 +29,60 @@ public class ApiResponseHandler {
         return ResponseEntity.status(status).body(response);
     }
 
+    // the ETag lets clients make the next read or update of the customer conditional
     static public ResponseEntity<CustomerApiResponse> buildApiResponse(boolean success, CustomerEntity customer , HttpStatus status) {
         CustomerApiResponse response = new CustomerApiResponse(success, customer);
+        return ResponseEntity.status(status).eTag(ETagHandler.eTag(customer.getVersion())).body(response);
+    }
+
+    static public ResponseEntity<CustomerBulkApiResponse> buildBulkApiResponse(boolean success, String message, List<CustomerBulkItemResult> results, HttpStatus status) {
+        CustomerBulkApiResponse response = new CustomerBulkApiResponse(success, message, results);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerPageApiResponse> buildPageApiResponse(boolean success, String message, HttpStatus status) {
+        CustomerPageApiResponse response = new CustomerPageApiResponse(success, message);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerPageApiResponse> buildPageApiResponse(boolean success, CustomerPage page, HttpStatus status) {
+        CustomerPageApiResponse response = new CustomerPageApiResponse(success, page.getCustomers(), page.getNextPageToken());
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerImportApiResponse> buildImportApiResponse(boolean success, String message, HttpStatus status) {
+        CustomerImportApiResponse response = new CustomerImportApiResponse(success, message);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerImportApiResponse> buildImportApiResponse(boolean success, CustomerImportEntity progress, List<CustomerImportReject> rejects, HttpStatus status) {
+        CustomerImportApiResponse response = new CustomerImportApiResponse(success, progress, rejects);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerEmailAvailabilityApiResponse> buildEmailAvailabilityApiResponse(boolean success, String message, HttpStatus status) {
+        CustomerEmailAvailabilityApiResponse response = new CustomerEmailAvailabilityApiResponse(success, message);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerEmailAvailabilityApiResponse> buildEmailAvailabilityApiResponse(boolean success, Map<String, Boolean> availability, HttpStatus status) {
+        CustomerEmailAvailabilityApiResponse response = new CustomerEmailAvailabilityApiResponse(success, availability);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerMultiGetApiResponse> buildMultiGetApiResponse(boolean success, CustomerMultiGet multiGet, HttpStatus status) {
+        CustomerMultiGetApiResponse response = new CustomerMultiGetApiResponse(success, multiGet.getCustomers(), multiGet.getMissingIds());
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerChangesApiResponse> buildChangesApiResponse(boolean success, CustomerChanges changes, HttpStatus status) {
+        CustomerChangesApiResponse response = new CustomerChangesApiResponse(success, changes.getChanges(), changes.getNextCursor(), changes.isHasMore());
+        return ResponseEntity.status(status).body(response);
+    }
+
+    static public ResponseEntity<CustomerStatsApiResponse> buildStatsApiResponse(boolean success, CustomerStats stats, HttpStatus status) {
+        CustomerStatsApiResponse response = new CustomerStatsApiResponse(
+                success, stats.getTotalCustomers(), stats.getSignupsPerDay(), stats.getTopEmailDomains(), stats.getReconciledDtime());
         return ResponseEntity.status(status).body(response);
     }
 }
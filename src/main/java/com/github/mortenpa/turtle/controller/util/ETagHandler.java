@@ -0,0 +1,42 @@
+package com.github.mortenpa.turtle.controller.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// customer ETags are the quoted version of the customer, like "3"
+public class ETagHandler {
+
+    static public String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    static public boolean isWildcard(String header) {
+        return header.trim().equals("*");
+    }
+
+    /*
+        The versions in an If-Match or If-None-Match header, tags that are not ours are left out.
+        If-None-Match uses the weak comparison, W/"3" matches version 3, If-Match only accepts strong tags.
+     */
+    static public Set<Long> parseVersions(String header, boolean weakComparison) {
+        Set<Long> versions = new LinkedHashSet<>();
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                if (!weakComparison) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+                } catch (NumberFormatException exception) {
+                    // not one of ours, can't match
+                }
+            }
+        }
+        return versions;
+    }
+}
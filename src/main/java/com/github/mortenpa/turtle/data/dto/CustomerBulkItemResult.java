@@ -0,0 +1,91 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+public class CustomerBulkItemResult {
+    // position of the operation in the request, results are always returned in request order
+    private int index;
+    private CustomerBulkOperationDTO.Operation operation;
+    private Long id;
+    // the HTTP status the same operation would have gotten from the single customer endpoints
+    private int status;
+    private boolean success;
+    private String message;
+    private CustomerEntity customer;
+
+    public CustomerBulkItemResult() {}
+
+    public CustomerBulkItemResult(
+            int index,
+            CustomerBulkOperationDTO.Operation operation,
+            Long id,
+            int status,
+            boolean success,
+            String message,
+            CustomerEntity customer
+    ) {
+        this.index = index;
+        this.operation = operation;
+        this.id = id;
+        this.status = status;
+        this.success = success;
+        this.message = message;
+        this.customer = customer;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public CustomerBulkOperationDTO.Operation getOperation() {
+        return operation;
+    }
+
+    public void setOperation(CustomerBulkOperationDTO.Operation operation) {
+        this.operation = operation;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public CustomerEntity getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(CustomerEntity customer) {
+        this.customer = customer;
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.mortenpa.turtle.data.dto;
+
+public class CustomerBulkOperationDTO {
+
+    public enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private Operation operation;
+
+    // required for UPDATE and DELETE, ignored for CREATE
+    private Long id;
+
+    // required for CREATE and UPDATE, ignored for DELETE
+    private CustomerDTO customer;
+
+    public CustomerBulkOperationDTO() {}
+
+    public CustomerBulkOperationDTO(Operation operation, Long id, CustomerDTO customer) {
+        this.operation = operation;
+        this.id = id;
+        this.customer = customer;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public void setOperation(Operation operation) {
+        this.operation = operation;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public CustomerDTO getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(CustomerDTO customer) {
+        this.customer = customer;
+    }
+
+    public String toString() {
+        return "CustomerBulkOperationDTO [operation=" + operation + ", id=" + id + ", customer=" + customer + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+import java.time.OffsetDateTime;
+
+public class CustomerChange {
+    private long id;
+    // true for a tombstone, the customer is then null
+    private boolean deleted;
+    // the modified datetime of the customer, or when it was deleted
+    private OffsetDateTime datetime;
+    private CustomerEntity customer;
+
+    public CustomerChange() {}
+
+    public CustomerChange(long id, boolean deleted, OffsetDateTime datetime, CustomerEntity customer) {
+        this.id = id;
+        this.deleted = deleted;
+        this.datetime = datetime;
+        this.customer = customer;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public OffsetDateTime getDatetime() {
+        return datetime;
+    }
+
+    public void setDatetime(OffsetDateTime datetime) {
+        this.datetime = datetime;
+    }
+
+    public CustomerEntity getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(CustomerEntity customer) {
+        this.customer = customer;
+    }
+}
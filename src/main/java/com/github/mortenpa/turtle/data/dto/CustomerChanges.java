@@ -0,0 +1,32 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import java.util.List;
+
+public class CustomerChanges {
+    // oldest first, in (datetime, id) order
+    private final List<CustomerChange> changes;
+
+    // where the next poll continues from, the settle time when all changes were returned, even if there were none
+    private final String nextCursor;
+
+    // whether more changes were already there, then the next poll should not wait
+    private final boolean hasMore;
+
+    public CustomerChanges(List<CustomerChange> changes, String nextCursor, boolean hasMore) {
+        this.changes = changes;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<CustomerChange> getChanges() {
+        return changes;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public enum CustomerFileFormat {
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String contentType;
+
+    CustomerFileFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public static Optional<CustomerFileFormat> fromName(String name) {
+        return Arrays.stream(values())
+                .filter(format -> format.name().equalsIgnoreCase(name))
+                .findFirst();
+    }
+}
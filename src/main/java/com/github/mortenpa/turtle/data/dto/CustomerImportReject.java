@@ -0,0 +1,30 @@
+package com.github.mortenpa.turtle.data.dto;
+
+public class CustomerImportReject {
+    // 1-based data row, the CSV header is not counted
+    private long row;
+    private String message;
+
+    public CustomerImportReject() {}
+
+    public CustomerImportReject(long row, String message) {
+        this.row = row;
+        this.message = message;
+    }
+
+    public long getRow() {
+        return row;
+    }
+
+    public void setRow(long row) {
+        this.row = row;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
+
+import java.util.List;
+
+public class CustomerImportResult {
+    private final CustomerImportEntity progress;
+
+    // rejects of this run only, capped so that a bad file can't blow up the response
+    private final List<CustomerImportReject> rejects;
+
+    public CustomerImportResult(CustomerImportEntity progress, List<CustomerImportReject> rejects) {
+        this.progress = progress;
+        this.rejects = rejects;
+    }
+
+    public CustomerImportEntity getProgress() {
+        return progress;
+    }
+
+    public List<CustomerImportReject> getRejects() {
+        return rejects;
+    }
+}
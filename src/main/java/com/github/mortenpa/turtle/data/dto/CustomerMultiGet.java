@@ -0,0 +1,26 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+import java.util.List;
+
+public class CustomerMultiGet {
+    // in the order the ids were asked for, every customer once
+    private final List<CustomerEntity> customers;
+
+    // the ids no customer was found for, in the order they were asked for
+    private final List<Long> missingIds;
+
+    public CustomerMultiGet(List<CustomerEntity> customers, List<Long> missingIds) {
+        this.customers = customers;
+        this.missingIds = missingIds;
+    }
+
+    public List<CustomerEntity> getCustomers() {
+        return customers;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+
+import java.util.List;
+
+public class CustomerPage {
+    private final List<CustomerEntity> customers;
+
+    // null when there are no more customers to fetch
+    private final String nextPageToken;
+
+    public CustomerPage(List<CustomerEntity> customers, String nextPageToken) {
+        this.customers = customers;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<CustomerEntity> getCustomers() {
+        return customers;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+}
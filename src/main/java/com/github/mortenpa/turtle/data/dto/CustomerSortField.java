@@ -0,0 +1,27 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+// columns the customer listing can be ordered by, the id is always used as the tiebreaker
+public enum CustomerSortField {
+    ID("id"),
+    CREATED_DATETIME("created_datetime"),
+    MODIFIED_DATETIME("modified_datetime");
+
+    private final String columnName;
+
+    CustomerSortField(String columnName) {
+        this.columnName = columnName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public static Optional<CustomerSortField> fromColumnName(String columnName) {
+        return Arrays.stream(values())
+                .filter(field -> field.columnName.equalsIgnoreCase(columnName))
+                .findFirst();
+    }
+}
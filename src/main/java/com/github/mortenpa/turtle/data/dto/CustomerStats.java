@@ -0,0 +1,41 @@
+package com.github.mortenpa.turtle.data.dto;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+public class CustomerStats {
+    private final long totalCustomers;
+
+    // customers created per UTC day, oldest day first, days without sign-ups included
+    private final Map<LocalDate, Long> signupsPerDay;
+
+    // customers per email domain, most customers first
+    private final Map<String, Long> topEmailDomains;
+
+    // when the counters were last corrected from the database
+    private final OffsetDateTime reconciledDtime;
+
+    public CustomerStats(long totalCustomers, Map<LocalDate, Long> signupsPerDay, Map<String, Long> topEmailDomains, OffsetDateTime reconciledDtime) {
+        this.totalCustomers = totalCustomers;
+        this.signupsPerDay = signupsPerDay;
+        this.topEmailDomains = topEmailDomains;
+        this.reconciledDtime = reconciledDtime;
+    }
+
+    public long getTotalCustomers() {
+        return totalCustomers;
+    }
+
+    public Map<LocalDate, Long> getSignupsPerDay() {
+        return signupsPerDay;
+    }
+
+    public Map<String, Long> getTopEmailDomains() {
+        return topEmailDomains;
+    }
+
+    public OffsetDateTime getReconciledDtime() {
+        return reconciledDtime;
+    }
+}
@@ -1,16 +1,25 @@
 package com.github.mortenpa.turtle.data.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Size;
 
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
 
 @Entity
 @Table(name = "customer")
 public class CustomerEntity {
+    /*
+        From a sequence that steps by 50, Hibernate hands out the 50 ids up to each value it reads (pooled optimizer).
+        Ids are known before the insert, so inserts can be batched, and only every 50th insert reads the sequence.
+        allocationSize has to match the sequence's INCREMENT BY and hibernate.jdbc.batch_size.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_id")
+    @SequenceGenerator(name = "customer_id", sequenceName = "customer_id_seq", allocationSize = 50)
     private long id;
 
     @Size(min=1, max = 50)
@@ -26,17 +35,29 @@ public class CustomerEntity {
     @Column(nullable = false, unique = true)
     private String email;
 
+    // unique, derived from email and kept in sync by setEmail, never exposed through the API
+    @JsonIgnore
+    @Column(name = "email_normalized", nullable = false, unique = true)
+    private String emailNormalized;
+
     @Column(name = "created_datetime", updatable = false)
     private OffsetDateTime createdDtime;
 
     @Column(name = "modified_datetime")
     private OffsetDateTime modifiedDtime;
 
+    // incremented on every update, also used as the ETag of the customer
+    @Version
+    @Column(nullable = false)
+    private long version;
+
     @PrePersist
     private void insertDatetimes() {
+        emailNormalized = normalizeEmail(email);
         // Set both createdDtime and modifiedDtime only if createdDtime is null (i.e., on creation)
         if (createdDtime == null) {
-            OffsetDateTime now = OffsetDateTime.now();
+            // the database keeps microseconds, truncating here makes the returned entity match the stored row
+            OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
             createdDtime = now;
             modifiedDtime = now;
         }
@@ -44,7 +65,8 @@ public class CustomerEntity {
 
     @PreUpdate
     private void updateModifiedDateTime() {
-        modifiedDtime = OffsetDateTime.now();
+        emailNormalized = normalizeEmail(email);
+        modifiedDtime = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
     }
 
     public CustomerEntity() {}
@@ -53,6 +75,22 @@ public class CustomerEntity {
         this.firstName = firstName;
         this.lastName = lastName;
         this.email = email;
+        this.emailNormalized = normalizeEmail(email);
+    }
+
+    // the customer after an update statement that wrote these values over this one, see CustomerRepository.UPDATE_CUSTOMER
+    public CustomerEntity afterUpdate(String firstName, String lastName, String email, OffsetDateTime modifiedDtime) {
+        CustomerEntity updatedCustomer = new CustomerEntity(firstName, lastName, email);
+        updatedCustomer.id = id;
+        updatedCustomer.createdDtime = createdDtime;
+        updatedCustomer.modifiedDtime = modifiedDtime;
+        updatedCustomer.version = version + 1;
+        return updatedCustomer;
+    }
+
+    // emails are compared and looked up case-insensitively and without surrounding whitespace
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
     }
 
     public long getId() {
@@ -85,6 +123,11 @@ public class CustomerEntity {
 
     public void setEmail(String email) {
         this.email = email;
+        this.emailNormalized = normalizeEmail(email);
+    }
+
+    public String getEmailNormalized() {
+        return emailNormalized;
     }
 
     public OffsetDateTime getCreatedDtime() {
@@ -103,6 +146,14 @@ public class CustomerEntity {
         this.modifiedDtime = modifiedDtime;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "CustomerEntity [" + firstName + ", " + lastName + ", " + email + " " + createdDtime + ", " + modifiedDtime + "]";
@@ -0,0 +1,77 @@
+package com.github.mortenpa.turtle.data.entity;
+
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+
+/*
+    A customer write, recorded in the same transaction as the write itself (transactional outbox).
+    The event id orders the events and is the SSE event id clients resume from with Last-Event-ID.
+ */
+@Entity
+@Table(name = "customer_event")
+public class CustomerEventEntity {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    // pooled like the customer ids, so the events of a _bulk chunk are inserted in JDBC batches
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_event_id")
+    @SequenceGenerator(name = "customer_event_id", sequenceName = "customer_event_id_seq", allocationSize = 50)
+    @Column(name = "event_id")
+    private long eventId;
+
+    @Column(name = "customer_id", nullable = false)
+    private long customerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false)
+    private Type type;
+
+    // the event data as sent to subscribers, the customer as JSON or only its id for deletes
+    @Column(nullable = false, length = 1000)
+    private String payload;
+
+    @Column(name = "created_datetime", nullable = false, updatable = false)
+    private OffsetDateTime createdDtime;
+
+    @PrePersist
+    private void insertDatetime() {
+        if (createdDtime == null) {
+            createdDtime = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+
+    public CustomerEventEntity() {}
+
+    public CustomerEventEntity(long customerId, Type type, String payload) {
+        this.customerId = customerId;
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public OffsetDateTime getCreatedDtime() {
+        return createdDtime;
+    }
+}
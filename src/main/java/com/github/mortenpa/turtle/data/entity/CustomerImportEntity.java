@@ -0,0 +1,136 @@
+package com.github.mortenpa.turtle.data.entity;
+
+import com.github.mortenpa.turtle.data.dto.CustomerFileFormat;
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "customer_import")
+public class CustomerImportEntity {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Id
+    @Column(name = "import_id")
+    private String importId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CustomerFileFormat format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    // data rows (header excluded) that are fully processed, an import resumes after this row
+    @Column(name = "committed_rows", nullable = false)
+    private long committedRows;
+
+    @Column(name = "accepted_rows", nullable = false)
+    private long acceptedRows;
+
+    @Column(name = "rejected_rows", nullable = false)
+    private long rejectedRows;
+
+    @Column(name = "created_datetime", updatable = false)
+    private OffsetDateTime createdDtime;
+
+    @Column(name = "modified_datetime")
+    private OffsetDateTime modifiedDtime;
+
+    @PrePersist
+    private void insertDatetimes() {
+        if (createdDtime == null) {
+            OffsetDateTime now = OffsetDateTime.now();
+            createdDtime = now;
+            modifiedDtime = now;
+        }
+    }
+
+    @PreUpdate
+    private void updateModifiedDateTime() {
+        modifiedDtime = OffsetDateTime.now();
+    }
+
+    public CustomerImportEntity() {}
+
+    public CustomerImportEntity(String importId, CustomerFileFormat format) {
+        this.importId = importId;
+        this.format = format;
+        this.status = Status.RUNNING;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public void setImportId(String importId) {
+        this.importId = importId;
+    }
+
+    public CustomerFileFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(CustomerFileFormat format) {
+        this.format = format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getCommittedRows() {
+        return committedRows;
+    }
+
+    public void setCommittedRows(long committedRows) {
+        this.committedRows = committedRows;
+    }
+
+    public long getAcceptedRows() {
+        return acceptedRows;
+    }
+
+    public void setAcceptedRows(long acceptedRows) {
+        this.acceptedRows = acceptedRows;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public void setRejectedRows(long rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+
+    public OffsetDateTime getCreatedDtime() {
+        return createdDtime;
+    }
+
+    public void setCreatedDtime(OffsetDateTime createdDtime) {
+        this.createdDtime = createdDtime;
+    }
+
+    public OffsetDateTime getModifiedDtime() {
+        return modifiedDtime;
+    }
+
+    public void setModifiedDtime(OffsetDateTime modifiedDtime) {
+        this.modifiedDtime = modifiedDtime;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerImportEntity [" + importId + ", " + format + ", " + status + ", " + committedRows + ", " + acceptedRows + ", " + rejectedRows + "]";
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.mortenpa.turtle.data.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+
+/*
+    Marks a deleted customer for the change feed, until it is purged after the retention period.
+    Ids are never reused, so there is at most one tombstone per id and a tombstoned id never comes back as a customer.
+ */
+@Entity
+@Table(name = "customer_tombstone")
+public class CustomerTombstoneEntity implements Persistable<Long> {
+
+    @Id
+    @Column(name = "customer_id")
+    private long customerId;
+
+    @Column(name = "deleted_datetime", nullable = false, updatable = false)
+    private OffsetDateTime deletedDtime;
+
+    @PrePersist
+    private void insertDatetime() {
+        if (deletedDtime == null) {
+            // the database keeps microseconds, like the datetimes of customers
+            deletedDtime = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+
+    public CustomerTombstoneEntity() {}
+
+    public CustomerTombstoneEntity(long customerId) {
+        this.customerId = customerId;
+    }
+
+    @Override
+    public Long getId() {
+        return customerId;
+    }
+
+    // tombstones are only ever inserted, saving one must not select it first to decide between insert and merge
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public OffsetDateTime getDeletedDtime() {
+        return deletedDtime;
+    }
+}
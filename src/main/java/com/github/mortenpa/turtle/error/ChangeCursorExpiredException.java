@@ -0,0 +1,7 @@
+package com.github.mortenpa.turtle.error;
+
+public class ChangeCursorExpiredException extends RuntimeException {
+    public ChangeCursorExpiredException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.mortenpa.turtle.error;
+
+public class ImportInProgressException extends RuntimeException {
+    public ImportInProgressException(String errorMessage) {
+        super(errorMessage);
+    }
+}
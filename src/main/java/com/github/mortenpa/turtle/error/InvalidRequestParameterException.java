@@ -0,0 +1,7 @@
+package com.github.mortenpa.turtle.error;
+
+public class InvalidRequestParameterException extends RuntimeException {
+    public InvalidRequestParameterException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.mortenpa.turtle.error;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String errorMessage) {
+        super(errorMessage);
+    }
+}
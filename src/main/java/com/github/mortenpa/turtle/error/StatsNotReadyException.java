@@ -0,0 +1,7 @@
+package com.github.mortenpa.turtle.error;
+
+public class StatsNotReadyException extends RuntimeException {
+    public StatsNotReadyException(String errorMessage) {
+        super(errorMessage);
+    }
+}
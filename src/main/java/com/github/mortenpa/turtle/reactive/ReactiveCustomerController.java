@@ -0,0 +1,153 @@
+package com.github.mortenpa.turtle.reactive;
+
+import com.github.mortenpa.turtle.controller.CustomerApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerEmailAvailabilityApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerPageApiResponse;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerPage;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
+import com.github.mortenpa.turtle.error.InvalidRequestParameterException;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.github.mortenpa.turtle.controller.CustomerController.MAX_EMAIL_CHECKS;
+import static com.github.mortenpa.turtle.controller.CustomerController.MAX_PAGE_SIZE;
+import static com.github.mortenpa.turtle.controller.CustomerController.MAX_SEARCH_RESULTS;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildEmailAvailabilityApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ApiResponseHandler.buildPageApiResponse;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.eTag;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.isWildcard;
+import static com.github.mortenpa.turtle.controller.util.ETagHandler.parseVersions;
+
+/*
+    The customer API of CustomerController on WebFlux, active with the reactive profile.
+    Requests and responses are the same, the export, import and bulk endpoints are only on the servlet stack.
+ */
+@RestController
+@RequestMapping("/api/customers")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerService customerService;
+
+    @Autowired
+    public ReactiveCustomerController(ReactiveCustomerService customerService) {
+        this.customerService = customerService;
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<CustomerApiResponse>> addCustomer(
+            @RequestBody @Valid CustomerDTO customerDTO
+    ) {
+        return customerService.add(customerDTO)
+                .map(addedCustomer -> buildApiResponse(true, addedCustomer, HttpStatus.CREATED));
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<CustomerPageApiResponse>> getCustomers(
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        CustomerSortField sortField = CustomerSortField.fromColumnName(sort)
+                .orElseThrow(() -> new InvalidRequestParameterException("Unknown sort, expected id, created_datetime or modified_datetime"));
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestParameterException("limit has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        return customerService.getPage(sortField, pageToken, limit)
+                .map(page -> buildPageApiResponse(true, page, HttpStatus.OK));
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<CustomerPageApiResponse>> searchCustomers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        if (q.isBlank()) {
+            throw new InvalidRequestParameterException("q can't be blank");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new InvalidRequestParameterException("limit has to be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+
+        return customerService.search(q, limit)
+                .map(customers -> buildPageApiResponse(true, new CustomerPage(customers, null), HttpStatus.OK));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<CustomerApiResponse>> getCustomer(
+            @PathVariable long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        Mono<ResponseEntity<CustomerApiResponse>> fetchedCustomer = customerService.getById(id)
+                .map(customer -> buildApiResponse(true, customer, HttpStatus.OK))
+                .defaultIfEmpty(buildApiResponse(false, "Customer not found", HttpStatus.NOT_FOUND));
+
+        if (ifNoneMatch == null) {
+            return fetchedCustomer;
+        }
+
+        // an unchanged customer is answered from its version alone, without loading or serializing it
+        return customerService.getVersion(id)
+                .filter(version -> isWildcard(ifNoneMatch) || parseVersions(ifNoneMatch, true).contains(version))
+                .map(version -> ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(version)).<CustomerApiResponse>build())
+                .switchIfEmpty(fetchedCustomer);
+    }
+
+    @GetMapping("/by-email/{email}")
+    public Mono<ResponseEntity<CustomerApiResponse>> getCustomerByEmail(
+            @PathVariable String email
+    ) {
+        return customerService.getByEmail(email)
+                .map(customer -> buildApiResponse(true, customer, HttpStatus.OK))
+                .defaultIfEmpty(buildApiResponse(false, "Customer not found", HttpStatus.NOT_FOUND));
+    }
+
+    @PostMapping("/email-availability")
+    public Mono<ResponseEntity<CustomerEmailAvailabilityApiResponse>> checkEmailAvailability(
+            @RequestBody List<String> emails
+    ) {
+        if (emails.size() > MAX_EMAIL_CHECKS) {
+            throw new InvalidRequestParameterException("At most " + MAX_EMAIL_CHECKS + " emails can be checked at once");
+        }
+        if (emails.contains(null)) {
+            throw new InvalidRequestParameterException("Emails can't be null");
+        }
+
+        return customerService.checkEmailAvailability(emails)
+                .map(availability -> buildEmailAvailabilityApiResponse(true, availability, HttpStatus.OK));
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<CustomerApiResponse>> updateCustomer(
+            @PathVariable long id,
+            @RequestBody @Valid CustomerDTO customerDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        Set<Long> expectedVersions = ifMatch == null || isWildcard(ifMatch) ? null : parseVersions(ifMatch, false);
+
+        return customerService.modify(id, customerDTO, expectedVersions)
+                .map(customer -> buildApiResponse(true, customer, HttpStatus.OK))
+                .defaultIfEmpty(buildApiResponse(false, "Customer with the ID does not exist", HttpStatus.NOT_FOUND));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<CustomerApiResponse>> deleteCustomer(@PathVariable long id) {
+        return customerService.delete(id)
+                .map(deleted -> deleted
+                        ? buildApiResponse(true, "Customer deleted successfully", HttpStatus.OK)
+                        : buildApiResponse(false, "Customer deletion failed", HttpStatus.NOT_FOUND));
+    }
+}
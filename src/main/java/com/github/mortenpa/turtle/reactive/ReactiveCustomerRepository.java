@@ -0,0 +1,176 @@
+package com.github.mortenpa.turtle.reactive;
+
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+
+/*
+    The customer queries of CustomerRepository over R2DBC, every method is a single statement apart from the delete,
+    which leaves a tombstone in the same transaction.
+    Writes use the same H2 data change delta tables, so they return the written row without reading it again.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerRepository {
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    // the transaction manager is not a bean, see application-reactive.properties
+    @Autowired
+    public ReactiveCustomerRepository(DatabaseClient databaseClient, ConnectionFactory connectionFactory) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+    public Mono<CustomerEntity> findById(long id) {
+        return databaseClient.sql("SELECT * FROM customer WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .one();
+    }
+
+    public Flux<CustomerEntity> findAllById(Collection<Long> ids) {
+        return databaseClient.sql("SELECT * FROM customer WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .all();
+    }
+
+    public Mono<CustomerEntity> findByEmailNormalized(String emailNormalized) {
+        return databaseClient.sql("SELECT * FROM customer WHERE email_normalized = :email")
+                .bind("email", emailNormalized)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .one();
+    }
+
+    public Flux<String> findExistingEmailNormalized(Collection<String> emailsNormalized) {
+        return databaseClient.sql("SELECT email_normalized FROM customer WHERE email_normalized IN (:emails)")
+                .bind("emails", emailsNormalized)
+                .map(row -> row.get("email_normalized", String.class))
+                .all();
+    }
+
+    public Mono<Long> findVersionById(long id) {
+        return databaseClient.sql("SELECT version FROM customer WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    public Mono<Boolean> existsById(long id) {
+        return findVersionById(id).hasElement();
+    }
+
+    public Flux<CustomerEntity> findByNamePrefix(String prefix, int limit) {
+        return databaseClient.sql("SELECT * FROM customer " +
+                        "WHERE LOWER(first_name) LIKE :prefix ESCAPE '\\' OR LOWER(last_name) LIKE :prefix ESCAPE '\\' " +
+                        "ORDER BY id LIMIT :limit")
+                .bind("prefix", prefix)
+                .bind("limit", limit)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .all();
+    }
+
+    // keyset pagination, see CustomerRepository, datetime is null for the first page and for the id ordering
+    public Flux<CustomerEntity> findPage(CustomerSortField sortField, OffsetDateTime datetime, Long afterId, int limit) {
+        String column = sortField.getColumnName();
+        String orderBy = sortField == CustomerSortField.ID ? " ORDER BY id" : " ORDER BY " + column + ", id";
+
+        DatabaseClient.GenericExecuteSpec spec;
+        if (afterId == null) {
+            spec = databaseClient.sql("SELECT * FROM customer" + orderBy + " LIMIT :limit");
+        }
+        else if (sortField == CustomerSortField.ID) {
+            spec = databaseClient.sql("SELECT * FROM customer WHERE id > :id" + orderBy + " LIMIT :limit")
+                    .bind("id", afterId);
+        }
+        else {
+            spec = databaseClient.sql("SELECT * FROM customer " +
+                            "WHERE " + column + " >= :datetime AND (" + column + " > :datetime OR id > :id)" + orderBy + " LIMIT :limit")
+                    .bind("datetime", datetime)
+                    .bind("id", afterId);
+        }
+
+        return spec.bind("limit", limit)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .all();
+    }
+
+    public Mono<CustomerEntity> insert(String firstName, String lastName, String email, String emailNormalized) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT * FROM FINAL TABLE (" +
+                        "INSERT INTO customer (first_name, last_name, email, email_normalized) " +
+                        "VALUES (:firstName, :lastName, :email, :emailNormalized))");
+        return bindCustomer(spec, firstName, lastName, email, emailNormalized)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .one();
+    }
+
+    // returns the customer as it was before, see CustomerRepository.updateCustomer
+    // versions is null for an unconditional update, empty if the customer was not found or was at another version
+    public Mono<CustomerEntity> update(
+            long id, String firstName, String lastName, String email, String emailNormalized, OffsetDateTime modifiedDtime, Collection<Long> versions) {
+        String sql = CustomerRepository.UPDATE_CUSTOMER + (versions == null ? ")" : " AND version IN (:versions))");
+        DatabaseClient.GenericExecuteSpec spec = bindCustomer(databaseClient.sql(sql).bind("id", id), firstName, lastName, email, emailNormalized)
+                .bind("modifiedDtime", modifiedDtime);
+        if (versions != null) {
+            spec = spec.bind("versions", versions);
+        }
+        return spec.map(ReactiveCustomerRepository::toCustomer).one();
+    }
+
+    // returns the deleted customer, empty if it did not exist, and leaves a tombstone for the change feed
+    // a customer is never gone without one
+    public Mono<CustomerEntity> deleteById(long id) {
+        return databaseClient.sql("SELECT * FROM OLD TABLE (DELETE FROM customer WHERE id = :id)")
+                .bind("id", id)
+                .map(ReactiveCustomerRepository::toCustomer)
+                .one()
+                .flatMap(deletedCustomer -> databaseClient
+                        .sql("INSERT INTO customer_tombstone (customer_id, deleted_datetime) VALUES (:id, CURRENT_TIMESTAMP)")
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(deletedCustomer))
+                .as(transactionalOperator::transactional);
+    }
+
+    // nulls are left to the not null constraints, just like with JPA, but they have to be bound with a type
+    private static DatabaseClient.GenericExecuteSpec bindCustomer(
+            DatabaseClient.GenericExecuteSpec spec, String firstName, String lastName, String email, String emailNormalized) {
+        spec = bindNullable(spec, "firstName", firstName);
+        spec = bindNullable(spec, "lastName", lastName);
+        spec = bindNullable(spec, "email", email);
+        return bindNullable(spec, "emailNormalized", emailNormalized);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name, String value) {
+        return value == null ? spec.bindNull(name, String.class) : spec.bind(name, value);
+    }
+
+    private static CustomerEntity toCustomer(Readable row) {
+        CustomerEntity customer = new CustomerEntity(
+                row.get("first_name", String.class),
+                row.get("last_name", String.class),
+                row.get("email", String.class)
+        );
+        customer.setId(row.get("id", Long.class));
+        customer.setCreatedDtime(row.get("created_datetime", OffsetDateTime.class));
+        customer.setModifiedDtime(row.get("modified_datetime", OffsetDateTime.class));
+        customer.setVersion(row.get("version", Long.class));
+        return customer;
+    }
+}
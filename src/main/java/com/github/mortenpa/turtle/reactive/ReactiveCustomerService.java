@@ -0,0 +1,197 @@
+package com.github.mortenpa.turtle.reactive;
+
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerPage;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.error.DuplicateEmailException;
+import com.github.mortenpa.turtle.error.PreconditionFailedException;
+import com.github.mortenpa.turtle.service.CustomerCache;
+import com.github.mortenpa.turtle.service.CustomerEmailRegistry;
+import com.github.mortenpa.turtle.service.CustomerPageToken;
+import com.github.mortenpa.turtle.service.CustomerSearchService;
+import com.github.mortenpa.turtle.service.CustomerService;
+import com.github.mortenpa.turtle.service.CustomerStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/*
+    CustomerService for the reactive API, nothing in here blocks.
+
+    Shares the customer cache, the email filter, the search index and the statistics counters with the servlet stack,
+    all of them are in memory.
+    Only the parts of them that don't touch JDBC are used, the database is always reached through R2DBC.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerService {
+
+    private final ReactiveCustomerRepository customerRepository;
+    private final CustomerEmailRegistry customerEmailRegistry;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerStatsService customerStatsService;
+    private final CustomerCache customerCache;
+
+    @Autowired
+    public ReactiveCustomerService(
+            ReactiveCustomerRepository customerRepository,
+            CustomerEmailRegistry customerEmailRegistry,
+            CustomerSearchService customerSearchService,
+            CustomerStatsService customerStatsService,
+            CustomerCache customerCache
+    ) {
+        this.customerRepository = customerRepository;
+        this.customerEmailRegistry = customerEmailRegistry;
+        this.customerSearchService = customerSearchService;
+        this.customerStatsService = customerStatsService;
+        this.customerCache = customerCache;
+    }
+
+    public Mono<CustomerEntity> getById(long customerId) {
+        CustomerEntity cachedCustomer = customerCache.get(customerId);
+        if (cachedCustomer != null) {
+            return Mono.just(cachedCustomer);
+        }
+        return customerRepository.findById(customerId).doOnNext(customerCache::put);
+    }
+
+    public Mono<Long> getVersion(long customerId) {
+        CustomerEntity cachedCustomer = customerCache.get(customerId);
+        if (cachedCustomer != null) {
+            return Mono.just(cachedCustomer.getVersion());
+        }
+        return customerRepository.findVersionById(customerId);
+    }
+
+    public Mono<CustomerEntity> getByEmail(String email) {
+        return customerRepository.findByEmailNormalized(CustomerEntity.normalizeEmail(email));
+    }
+
+    public Mono<Map<String, Boolean>> checkEmailAvailability(List<String> emails) {
+        List<String> maybeTaken = emails.stream()
+                .map(CustomerEntity::normalizeEmail)
+                .filter(customerEmailRegistry::mightBeTaken)
+                .distinct()
+                .toList();
+
+        Mono<Set<String>> taken = maybeTaken.isEmpty()
+                ? Mono.just(Set.of())
+                : customerRepository.findExistingEmailNormalized(maybeTaken).collect(HashSet::new, Set::add);
+
+        return taken.map(takenEmails -> {
+            Map<String, Boolean> availability = new LinkedHashMap<>();
+            for (String email : emails) {
+                availability.put(email, !takenEmails.contains(CustomerEntity.normalizeEmail(email)));
+            }
+            return availability;
+        });
+    }
+
+    public Mono<CustomerPage> getPage(CustomerSortField sortField, String pageToken, int limit) {
+        CustomerPageToken token = pageToken == null ? null : CustomerPageToken.decode(pageToken, sortField);
+        Flux<CustomerEntity> customers = token == null
+                ? customerRepository.findPage(sortField, null, null, limit + 1)
+                : customerRepository.findPage(sortField, token.getDatetime(), token.getId(), limit + 1);
+
+        // one extra customer tells whether there is a next page
+        return customers.collectList().map(page -> {
+            if (page.size() <= limit) {
+                return new CustomerPage(page, null);
+            }
+            List<CustomerEntity> customersOnPage = page.subList(0, limit);
+            return new CustomerPage(customersOnPage, CustomerPageToken.encode(sortField, customersOnPage.get(limit - 1)));
+        });
+    }
+
+    public Mono<List<CustomerEntity>> search(String query, int limit) {
+        Optional<List<Long>> rankedIds = customerSearchService.searchIds(query, limit);
+        if (rankedIds.isEmpty()) {
+            String prefix = CustomerSearchService.namePrefixPattern(query);
+            return prefix == null ? Mono.just(List.of()) : customerRepository.findByNamePrefix(prefix, limit).collectList();
+        }
+
+        List<Long> ids = rankedIds.get();
+        if (ids.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return customerRepository.findAllById(ids)
+                .collectMap(CustomerEntity::getId)
+                .map(customers -> ids.stream().map(customers::get).filter(Objects::nonNull).toList());
+    }
+
+    public Mono<CustomerEntity> add(CustomerDTO customer) {
+        String emailNormalized = CustomerEntity.normalizeEmail(customer.getEmail());
+
+        // only a possible duplicate costs a lookup before the insert
+        Mono<Boolean> knownDuplicate = customerEmailRegistry.mightBeTaken(emailNormalized)
+                ? customerRepository.findByEmailNormalized(emailNormalized).hasElement()
+                : Mono.just(false);
+
+        return knownDuplicate
+                .flatMap(duplicate -> duplicate
+                        ? Mono.<CustomerEntity>error(new DuplicateEmailException("Email is not unique!"))
+                        : customerRepository.insert(customer.getFirstName(), customer.getLastName(), customer.getEmail(), emailNormalized))
+                .onErrorMap(DataIntegrityViolationException.class, CustomerService::translateDataIntegrityViolation)
+                .doOnNext(addedCustomer -> {
+                    afterWrite(addedCustomer);
+                    customerStatsService.added(addedCustomer);
+                });
+    }
+
+    // expectedVersions is null for an unconditional update, see CustomerService.modify
+    public Mono<CustomerEntity> modify(long customerId, CustomerDTO customer, Collection<Long> expectedVersions) {
+        OffsetDateTime modifiedDtime = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Mono<CustomerEntity> update = expectedVersions != null && expectedVersions.isEmpty()
+                ? Mono.empty()
+                : customerRepository.update(
+                        customerId,
+                        customer.getFirstName(),
+                        customer.getLastName(),
+                        customer.getEmail(),
+                        CustomerEntity.normalizeEmail(customer.getEmail()),
+                        modifiedDtime,
+                        expectedVersions
+                ).map(previousCustomer -> {
+                    CustomerEntity updatedCustomer = previousCustomer.afterUpdate(
+                            customer.getFirstName(), customer.getLastName(), customer.getEmail(), modifiedDtime);
+                    customerStatsService.modified(previousCustomer, updatedCustomer);
+                    return updatedCustomer;
+                });
+
+        Mono<CustomerEntity> notUpdated = expectedVersions == null
+                ? Mono.empty()
+                : customerRepository.existsById(customerId).flatMap(exists -> exists
+                        ? Mono.error(new PreconditionFailedException("Customer " + customerId + " is not at any of the versions " + expectedVersions))
+                        : Mono.empty());
+
+        return update
+                .onErrorMap(DataIntegrityViolationException.class, CustomerService::translateDataIntegrityViolation)
+                .switchIfEmpty(notUpdated)
+                .doOnNext(this::afterWrite);
+    }
+
+    public Mono<Boolean> delete(long customerId) {
+        return customerRepository.deleteById(customerId)
+                .doOnNext(deletedCustomer -> {
+                    customerCache.deleted(customerId);
+                    customerSearchService.remove(customerId);
+                    customerStatsService.removed(deletedCustomer);
+                })
+                .hasElement();
+    }
+
+    // statements run in auto-commit mode, so a written customer is already committed here
+    private void afterWrite(CustomerEntity customer) {
+        customerCache.put(customer);
+        customerEmailRegistry.add(customer.getEmailNormalized());
+        customerSearchService.index(customer);
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.mortenpa.turtle.repository;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CustomerEventRepository extends JpaRepository<CustomerEventEntity, Long> {
+
+    // range scans on the primary key, the pageable is only used for its size
+    List<CustomerEventEntity> findByEventIdGreaterThanOrderByEventIdAsc(long eventId, Pageable pageable);
+
+    List<CustomerEventEntity> findByEventIdGreaterThanAndEventIdLessThanEqualOrderByEventIdAsc(long fromEventId, long toEventId, Pageable pageable);
+
+    // the skipped ids that are looked up again
+    List<CustomerEventEntity> findByEventIdInOrderByEventIdAsc(Collection<Long> eventIds);
+
+    @Query("select max(e.eventId) from CustomerEventEntity e")
+    Optional<Long> findMaxEventId();
+
+    // the outbox only holds the events of the retention period, so this scan stays small
+    @Transactional
+    @Modifying
+    @Query("delete from CustomerEventEntity e where e.createdDtime < :datetime")
+    int deleteCreatedBefore(@Param("datetime") OffsetDateTime datetime);
+
+}
@@ -0,0 +1,10 @@
+package com.github.mortenpa.turtle.repository;
+
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CustomerImportRepository extends JpaRepository<CustomerImportEntity, String> {
+
+}
@@ -1,10 +1,186 @@
 package com.github.mortenpa.turtle.repository;
 
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface CustomerRepository extends JpaRepository<CustomerEntity, Long> {
 
+    String UPDATE_CUSTOMER = "SELECT * FROM OLD TABLE (" +
+            "UPDATE customer SET first_name = :firstName, last_name = :lastName, email = :email, " +
+            "email_normalized = :emailNormalized, modified_datetime = :modifiedDtime, version = version + 1 " +
+            "WHERE id = :id";
+
+    /*
+        Updates a customer and reads the row as it was before back in the same statement (H2 data change delta table),
+        so there is no select before the update and no re-read after it. Empty if the customer does not exist.
+        The old email is what the statistics need, the updated customer is the old one with the written values,
+        see CustomerEntity.afterUpdate, which is why the modified datetime is passed in instead of taken by the database.
+     */
+    @Transactional
+    @Query(value = UPDATE_CUSTOMER + ")", nativeQuery = true)
+    Optional<CustomerEntity> updateCustomer(
+            @Param("id") long id,
+            @Param("firstName") String firstName,
+            @Param("lastName") String lastName,
+            @Param("email") String email,
+            @Param("emailNormalized") String emailNormalized,
+            @Param("modifiedDtime") OffsetDateTime modifiedDtime
+    );
+
+    // same as updateCustomer, but only if the customer is still at one of the given versions
+    @Transactional
+    @Query(value = UPDATE_CUSTOMER + " AND version IN (:versions))", nativeQuery = true)
+    Optional<CustomerEntity> updateCustomerIfVersion(
+            @Param("id") long id,
+            @Param("firstName") String firstName,
+            @Param("lastName") String lastName,
+            @Param("email") String email,
+            @Param("emailNormalized") String emailNormalized,
+            @Param("modifiedDtime") OffsetDateTime modifiedDtime,
+            @Param("versions") Collection<Long> versions
+    );
+
+    // for conditional requests, reads a single number instead of the whole customer
+    @Query("select c.version from CustomerEntity c where c.id = :id")
+    Optional<Long> findVersionById(@Param("id") long id);
+
+    // a single seek on the unique email_normalized index
+    Optional<CustomerEntity> findByEmailNormalized(String emailNormalized);
+
+    boolean existsByEmailNormalized(String emailNormalized);
+
+    // the subset of the given normalized emails that are in use
+    @Query("select c.emailNormalized from CustomerEntity c where c.emailNormalized in :emails")
+    List<String> findExistingEmailNormalized(@Param("emails") Collection<String> emails);
+
+    // for rebuilding the email filter, has to be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c.emailNormalized from CustomerEntity c")
+    Stream<String> streamAllEmailNormalized();
+
+    // single statement delete that also returns the deleted row, empty if the customer did not exist
+    @Transactional
+    @Query(value = "SELECT * FROM OLD TABLE (DELETE FROM customer WHERE id = :id)", nativeQuery = true)
+    Optional<CustomerEntity> deleteCustomerById(@Param("id") long id);
+
+    @Modifying
+    @Query(value = "INSERT INTO customer_tombstone (customer_id, deleted_datetime) VALUES (:id, CURRENT_TIMESTAMP)", nativeQuery = true)
+    void insertTombstone(@Param("id") long id);
+
+    // deletes the customer and leaves a tombstone for the change feed in the same transaction, only if it existed
+    @Transactional
+    default Optional<CustomerEntity> deleteCustomerWithTombstone(long id) {
+        Optional<CustomerEntity> deletedCustomer = deleteCustomerById(id);
+        if (deletedCustomer.isPresent()) {
+            insertTombstone(id);
+        }
+        return deletedCustomer;
+    }
+
+    /*
+        Keyset pagination, the pageable is only used for its size and must not be sorted.
+        The datetime queries use ">=" on the datetime so that the (datetime, id) index can be range scanned,
+        the OR condition only filters the rows that share the datetime of the last customer on the previous page.
+     */
+
+    List<CustomerEntity> findAllByOrderByIdAsc(Pageable pageable);
+
+    @Query("select c from CustomerEntity c where c.id > :id order by c.id")
+    List<CustomerEntity> findPageAfterId(@Param("id") long id, Pageable pageable);
+
+    List<CustomerEntity> findAllByOrderByCreatedDtimeAscIdAsc(Pageable pageable);
+
+    @Query("select c from CustomerEntity c " +
+           "where c.createdDtime >= :datetime and (c.createdDtime > :datetime or c.id > :id) " +
+           "order by c.createdDtime, c.id")
+    List<CustomerEntity> findPageAfterCreatedDtime(@Param("datetime") OffsetDateTime datetime, @Param("id") long id, Pageable pageable);
+
+    List<CustomerEntity> findAllByOrderByModifiedDtimeAscIdAsc(Pageable pageable);
+
+    @Query("select c from CustomerEntity c " +
+           "where c.modifiedDtime >= :datetime and (c.modifiedDtime > :datetime or c.id > :id) " +
+           "order by c.modifiedDtime, c.id")
+    List<CustomerEntity> findPageAfterModifiedDtime(@Param("datetime") OffsetDateTime datetime, @Param("id") long id, Pageable pageable);
+
+    // the change feed, the same as the modified datetime pages but bounded above so that only settled changes are returned
+    @Query("select c from CustomerEntity c " +
+           "where c.modifiedDtime >= :datetime and (c.modifiedDtime > :datetime or c.id > :id) and c.modifiedDtime < :until " +
+           "order by c.modifiedDtime, c.id")
+    List<CustomerEntity> findChangesAfter(
+            @Param("datetime") OffsetDateTime datetime,
+            @Param("id") long id,
+            @Param("until") OffsetDateTime until,
+            Pageable pageable
+    );
+
+    // prefix search on the names, scans the table, only used while the in-memory search index is not built yet
+    @Query("select c from CustomerEntity c " +
+           "where lower(c.firstName) like :prefix escape '\\' or lower(c.lastName) like :prefix escape '\\' " +
+           "order by c.id")
+    List<CustomerEntity> findByNamePrefix(@Param("prefix") String prefix, Pageable pageable);
+
+    interface CustomerName {
+        long getId();
+        String getFirstName();
+        String getLastName();
+    }
+
+    // for building the search index, only the names are read, has to be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c.id as id, c.firstName as firstName, c.lastName as lastName from CustomerEntity c")
+    Stream<CustomerName> streamAllNames();
+
+    interface SignupCount {
+        String getSignupDate();
+        long getCustomers();
+    }
+
+    // customers created per UTC day since the datetime, a range scan on the (created_datetime, id) index
+    @Query(value = "SELECT FORMATDATETIME(created_datetime, 'yyyy-MM-dd', 'en', 'UTC') AS \"signupDate\", COUNT(*) AS \"customers\" " +
+                   "FROM customer WHERE created_datetime >= :datetime " +
+                   "GROUP BY FORMATDATETIME(created_datetime, 'yyyy-MM-dd', 'en', 'UTC')", nativeQuery = true)
+    List<SignupCount> countSignupsPerDaySince(@Param("datetime") OffsetDateTime datetime);
+
+    interface DomainCount {
+        String getDomain();
+        long getCustomers();
+    }
+
+    // customers per email domain, the part after the last @, scans the email_normalized index
+    @Query(value = "SELECT SUBSTRING(email_normalized, LOCATE('@', email_normalized, -1) + 1) AS \"domain\", COUNT(*) AS \"customers\" " +
+                   "FROM customer " +
+                   "GROUP BY SUBSTRING(email_normalized, LOCATE('@', email_normalized, -1) + 1)", nativeQuery = true)
+    List<DomainCount> countPerEmailDomain();
+
+    // for full table exports, has to be consumed inside a transaction and closed afterwards
+    // H2 only streams it with lazy query execution, see CustomerExportService
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from CustomerEntity c order by c.id")
+    Stream<CustomerEntity> streamAllByOrderByIdAsc();
+
 }
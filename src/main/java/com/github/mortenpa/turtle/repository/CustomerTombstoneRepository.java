@@ -0,0 +1,35 @@
+package com.github.mortenpa.turtle.repository;
+
+import com.github.mortenpa.turtle.data.entity.CustomerTombstoneEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface CustomerTombstoneRepository extends JpaRepository<CustomerTombstoneEntity, Long> {
+
+    // the same keyset conditions as the customer pages, bounded above so that only settled deletes are returned
+    @Query("select t from CustomerTombstoneEntity t " +
+           "where t.deletedDtime >= :datetime and (t.deletedDtime > :datetime or t.customerId > :id) and t.deletedDtime < :until " +
+           "order by t.deletedDtime, t.customerId")
+    List<CustomerTombstoneEntity> findChangesAfter(
+            @Param("datetime") OffsetDateTime datetime,
+            @Param("id") long id,
+            @Param("until") OffsetDateTime until,
+            Pageable pageable
+    );
+
+    // a single range delete on the (deleted_datetime, customer_id) index
+    @Transactional
+    @Modifying
+    @Query("delete from CustomerTombstoneEntity t where t.deletedDtime < :datetime")
+    int deleteDeletedBefore(@Param("datetime") OffsetDateTime datetime);
+
+}
@@ -0,0 +1,158 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    RFC 4180 CSV with a header row. The header has to contain first_name, last_name and email,
+    any other columns (such as the ones in our own CSV export) are ignored.
+ */
+class CsvCustomerRowReader implements CustomerRowReader {
+
+    // a record longer than this is rejected instead of being buffered, keeps memory bounded on garbage input
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private final BufferedReader reader;
+    private int firstNameColumn = -1;
+    private int lastNameColumn = -1;
+    private int emailColumn = -1;
+    private long rowNumber;
+    private boolean lastRecordTooLong;
+
+    CsvCustomerRowReader(BufferedReader reader) throws IOException {
+        this.reader = reader;
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new RowFormatException("CSV header is missing");
+        }
+        if (lastRecordTooLong) {
+            throw new RowFormatException("CSV header is longer than " + MAX_RECORD_LENGTH + " characters");
+        }
+
+        for (int column = 0; column < header.size(); column++) {
+            switch (header.get(column).trim().toLowerCase(Locale.ROOT)) {
+                case "first_name" -> firstNameColumn = column;
+                case "last_name" -> lastNameColumn = column;
+                case "email" -> emailColumn = column;
+                default -> { }
+            }
+        }
+
+        if (firstNameColumn < 0 || lastNameColumn < 0 || emailColumn < 0) {
+            throw new RowFormatException("CSV header has to contain first_name, last_name and email");
+        }
+    }
+
+    @Override
+    public CustomerDTO next() throws IOException {
+        List<String> record;
+        do {
+            record = readRecord();
+            if (record == null) {
+                return null;
+            }
+        } while (record.size() == 1 && record.get(0).isEmpty());
+
+        rowNumber++;
+        if (lastRecordTooLong) {
+            throw new RowFormatException("Row is longer than " + MAX_RECORD_LENGTH + " characters");
+        }
+
+        int requiredColumns = Math.max(firstNameColumn, Math.max(lastNameColumn, emailColumn)) + 1;
+        if (record.size() < requiredColumns) {
+            throw new RowFormatException("Row has " + record.size() + " columns, expected at least " + requiredColumns);
+        }
+
+        return new CustomerDTO(
+                emptyToNull(record.get(firstNameColumn)),
+                emptyToNull(record.get(lastNameColumn)),
+                emptyToNull(record.get(emailColumn))
+        );
+    }
+
+    @Override
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    // reads one record, quoted fields may contain separators, quotes and line breaks
+    // an overly long record is still consumed to the end, but its content is dropped and lastRecordTooLong is set
+    private List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean tooLong = false;
+        int length = 0;
+        int character = reader.read();
+
+        if (character == -1) {
+            return null;
+        }
+
+        while (character != -1) {
+            if (++length > MAX_RECORD_LENGTH) {
+                tooLong = true;
+            }
+
+            if (quoted) {
+                if (character == '"') {
+                    reader.mark(1);
+                    int nextCharacter = reader.read();
+                    if (nextCharacter == '"') {
+                        appendUnlessTooLong(field, '"', tooLong);
+                    }
+                    else {
+                        quoted = false;
+                        if (nextCharacter != -1) {
+                            reader.reset();
+                        }
+                    }
+                }
+                else {
+                    appendUnlessTooLong(field, (char) character, tooLong);
+                }
+            }
+            else if (character == '"') {
+                quoted = true;
+            }
+            else if (character == ',') {
+                if (!tooLong) {
+                    fields.add(field.toString());
+                }
+                field.setLength(0);
+            }
+            else if (character == '\n') {
+                break;
+            }
+            else if (character != '\r') {
+                appendUnlessTooLong(field, (char) character, tooLong);
+            }
+
+            character = reader.read();
+        }
+
+        fields.add(field.toString());
+        lastRecordTooLong = tooLong;
+        return fields;
+    }
+
+    private static void appendUnlessTooLong(StringBuilder field, char character, boolean tooLong) {
+        if (!tooLong) {
+            field.append(character);
+        }
+    }
+
+    // an empty CSV field is treated as a missing value, same as null in JSON
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,407 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerBulkItemResult;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO.Operation;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerTombstoneEntity;
+import com.github.mortenpa.turtle.error.DuplicateEmailException;
+import com.github.mortenpa.turtle.error.NullNotAllowedException;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import com.github.mortenpa.turtle.repository.CustomerTombstoneRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/*
+    Runs a list of create/update/delete operations in chunks.
+
+    Every chunk is first attempted in a single transaction so that Hibernate can batch the statements.
+    If anything in the chunk fails the transaction is rolled back and the chunk is replayed one operation
+    per transaction, which pins the failure on the offending operation without aborting the rest.
+    The persistence context is cleared at the end of every transaction, it may be the one of the request (open
+    session in view), so the customers of earlier chunks are neither kept in memory nor dirty checked again.
+ */
+@Service
+public class CustomerBulkService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerBulkService.class);
+
+    private final CustomerRepository customerRepository;
+    private final CustomerTombstoneRepository customerTombstoneRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final CustomerCache customerCache;
+    private final CustomerEmailRegistry customerEmailRegistry;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerEventOutbox customerEventOutbox;
+    private final CustomerStatsService customerStatsService;
+
+    @Value("${turtleman.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${turtleman.bulk.max-operations:10000}")
+    private int maxOperations;
+
+    @Autowired
+    public CustomerBulkService(
+            CustomerRepository customerRepository,
+            CustomerTombstoneRepository customerTombstoneRepository,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            Validator validator,
+            CustomerCache customerCache,
+            CustomerEmailRegistry customerEmailRegistry,
+            CustomerSearchService customerSearchService,
+            CustomerEventOutbox customerEventOutbox,
+            CustomerStatsService customerStatsService
+    ) {
+        this.customerRepository = customerRepository;
+        this.customerTombstoneRepository = customerTombstoneRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.customerCache = customerCache;
+        this.customerEmailRegistry = customerEmailRegistry;
+        this.customerSearchService = customerSearchService;
+        this.customerEventOutbox = customerEventOutbox;
+        this.customerStatsService = customerStatsService;
+    }
+
+    /*
+        Called inside every transaction of execute right before it commits, with the results of all operations as
+        far as they are decided by then, null for the others. Lets a caller store its own progress in the same
+        transaction as the customers that progress covers.
+     */
+    @FunctionalInterface
+    public interface CommitListener {
+        void beforeCommit(List<CustomerBulkItemResult> results);
+    }
+
+    public int getMaxOperations() {
+        return maxOperations;
+    }
+
+    // operations per transaction, a request of at most this many valid operations is committed at once
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public List<CustomerBulkItemResult> execute(List<CustomerBulkOperationDTO> operations) {
+        return execute(operations, null);
+    }
+
+    public List<CustomerBulkItemResult> execute(List<CustomerBulkOperationDTO> operations, CommitListener commitListener) {
+        CustomerBulkItemResult[] results = new CustomerBulkItemResult[operations.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+
+        // invalid operations are answered right away and never reach the database
+        for (int index = 0; index < operations.size(); index++) {
+            CustomerBulkItemResult rejection = validate(index, operations.get(index));
+            if (rejection != null) {
+                results[index] = rejection;
+            }
+            else {
+                validIndexes.add(index);
+            }
+        }
+
+        validIndexes = rejectKnownDuplicates(operations, validIndexes, results);
+
+        for (int start = 0; start < validIndexes.size(); start += chunkSize) {
+            List<Integer> chunk = validIndexes.subList(start, Math.min(start + chunkSize, validIndexes.size()));
+            executeChunk(operations, chunk, results, commitListener);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private void executeChunk(
+            List<CustomerBulkOperationDTO> operations,
+            List<Integer> chunk,
+            CustomerBulkItemResult[] results,
+            CommitListener commitListener
+    ) {
+        Map<Integer, CustomerBulkItemResult> chunkResults;
+        Map<Integer, CustomerEntity> previousCustomers = new HashMap<>();
+        try {
+            chunkResults = transactionTemplate.execute(status -> applyInTransaction(operations, chunk, results, previousCustomers, commitListener));
+        } catch (RuntimeException exception) {
+            log.warn("Bulk chunk of {} operations failed, replaying one by one: {}", chunk.size(), exception.getMessage());
+
+            for (int index : chunk) {
+                results[index] = executeSingle(operations, index, results, commitListener);
+            }
+            return;
+        }
+
+        // outside of the try, a committed chunk must never be replayed
+        chunkResults.forEach((index, result) -> results[index] = result);
+        afterCommit(chunkResults, previousCustomers);
+    }
+
+    private CustomerBulkItemResult executeSingle(
+            List<CustomerBulkOperationDTO> operations,
+            int index,
+            CustomerBulkItemResult[] results,
+            CommitListener commitListener
+    ) {
+        CustomerBulkOperationDTO operation = operations.get(index);
+        CustomerBulkItemResult result;
+        Map<Integer, CustomerEntity> previousCustomers = new HashMap<>();
+        try {
+            result = transactionTemplate.execute(status -> applyInTransaction(operations, List.of(index), results, previousCustomers, commitListener)).get(index);
+        } catch (DataIntegrityViolationException exception) {
+            RuntimeException translated = CustomerService.translateDataIntegrityViolation(exception);
+            if (translated instanceof DuplicateEmailException) {
+                return failure(index, operation, HttpStatus.CONFLICT, "Failed due to email already being in use");
+            }
+            else if (translated instanceof NullNotAllowedException) {
+                return failure(index, operation, HttpStatus.BAD_REQUEST, "Failed due to null values");
+            }
+            log.error("Bulk operation {} failed: {}", index, exception.getMessage(), exception);
+            return failure(index, operation, HttpStatus.INTERNAL_SERVER_ERROR, "Failed due to an unknown error");
+        } catch (OptimisticLockingFailureException exception) {
+            // updates and deletes are version checked, someone else changed the customer in between
+            return failure(index, operation, HttpStatus.CONFLICT, "Failed due to the customer being modified concurrently");
+        } catch (ConstraintViolationException exception) {
+            return failure(index, operation, HttpStatus.BAD_REQUEST,
+                    "Failed due to property validations, check for missing or badly formatted properties");
+        } catch (RuntimeException exception) {
+            log.error("Bulk operation {} failed: {}", index, exception.getMessage(), exception);
+            return failure(index, operation, HttpStatus.INTERNAL_SERVER_ERROR, "Failed due to an unknown error");
+        }
+
+        afterCommit(Map.of(index, result), previousCustomers);
+        return result;
+    }
+
+    // the cache, the email filter, the search index and the statistics only ever see committed customers
+    private void afterCommit(Map<Integer, CustomerBulkItemResult> committedResults, Map<Integer, CustomerEntity> previousCustomers) {
+        for (CustomerBulkItemResult result : committedResults.values()) {
+            if (!result.isSuccess()) {
+                continue;
+            }
+            if (result.getOperation() == Operation.DELETE) {
+                customerCache.deleted(result.getId());
+                customerSearchService.remove(result.getId());
+                customerStatsService.removed(previousCustomers.get(result.getIndex()));
+            }
+            else {
+                customerEmailRegistry.add(result.getCustomer().getEmailNormalized());
+                customerSearchService.index(result.getCustomer());
+                if (result.getOperation() == Operation.CREATE) {
+                    customerStatsService.added(result.getCustomer());
+                }
+                else {
+                    // at the version the flush gave it, a read that raced the chunk can't put an older one back
+                    customerCache.put(result.getCustomer());
+                    customerStatsService.modified(previousCustomers.get(result.getIndex()), result.getCustomer());
+                }
+            }
+        }
+    }
+
+    /*
+        Creates with an email that is already in use would fail the whole chunk and force the one by one replay,
+        which is what happens when an import is retried. Those are rejected up front with one lookup for all of them.
+        Only done for create-only requests, an update or delete in the same request could free up an email.
+     */
+    private List<Integer> rejectKnownDuplicates(List<CustomerBulkOperationDTO> operations, List<Integer> validIndexes, CustomerBulkItemResult[] results) {
+        if (validIndexes.isEmpty() || validIndexes.stream().anyMatch(index -> operations.get(index).getOperation() != Operation.CREATE)) {
+            return validIndexes;
+        }
+
+        Set<String> taken = customerEmailRegistry.findTaken(validIndexes.stream()
+                .map(index -> CustomerEntity.normalizeEmail(operations.get(index).getCustomer().getEmail()))
+                .toList());
+        if (taken.isEmpty()) {
+            return validIndexes;
+        }
+
+        List<Integer> remainingIndexes = new ArrayList<>();
+        for (int index : validIndexes) {
+            CustomerBulkOperationDTO operation = operations.get(index);
+            if (taken.contains(CustomerEntity.normalizeEmail(operation.getCustomer().getEmail()))) {
+                results[index] = failure(index, operation, HttpStatus.CONFLICT, "Failed due to email already being in use");
+            }
+            else {
+                remainingIndexes.add(index);
+            }
+        }
+        return remainingIndexes;
+    }
+
+    // must be called inside a transaction, the returned results are only valid if that transaction commits
+    // previousCustomers gets the updated and deleted customers as they were before, by operation index, for the statistics after the commit
+    private Map<Integer, CustomerBulkItemResult> applyInTransaction(
+            List<CustomerBulkOperationDTO> operations,
+            List<Integer> indexes,
+            CustomerBulkItemResult[] decidedResults,
+            Map<Integer, CustomerEntity> previousCustomers,
+            CommitListener commitListener
+    ) {
+        // load every customer that is updated or deleted with one query instead of one lookup per operation
+        Set<Long> existingIds = new HashSet<>();
+        for (int index : indexes) {
+            CustomerBulkOperationDTO operation = operations.get(index);
+            if (operation.getOperation() != Operation.CREATE) {
+                existingIds.add(operation.getId());
+            }
+        }
+
+        Map<Long, CustomerEntity> existingCustomers = new HashMap<>();
+        if (!existingIds.isEmpty()) {
+            for (CustomerEntity customer : customerRepository.findAllById(existingIds)) {
+                existingCustomers.put(customer.getId(), customer);
+            }
+        }
+
+        Map<Integer, CustomerBulkItemResult> results = new HashMap<>();
+        Map<Integer, CustomerEntity> newCustomers = new LinkedHashMap<>();
+        for (int index : indexes) {
+            CustomerBulkOperationDTO operation = operations.get(index);
+            if (operation.getOperation() == Operation.CREATE) {
+                CustomerDTO customerDTO = operation.getCustomer();
+                newCustomers.put(index, new CustomerEntity(customerDTO.getFirstName(), customerDTO.getLastName(), customerDTO.getEmail()));
+            }
+            else {
+                results.put(index, apply(index, operation, existingCustomers, previousCustomers));
+            }
+        }
+
+        // the ids come from the pooled sequence, so the inserts go out as JDBC batches on flush
+        customerRepository.saveAll(newCustomers.values());
+        newCustomers.forEach((index, customer) -> results.put(index, success(index, operations.get(index), HttpStatus.CREATED, customer)));
+
+        // flush here so that constraint violations surface inside the transaction instead of at commit
+        customerRepository.flush();
+
+        // in request order, after the flush which sets the modified datetimes and versions of the updated customers
+        // the event inserts go out as JDBC batches on the next flush
+        for (int index : indexes) {
+            CustomerBulkItemResult result = results.get(index);
+            if (!result.isSuccess()) {
+                continue;
+            }
+            switch (result.getOperation()) {
+                case CREATE -> customerEventOutbox.record(CustomerEventEntity.Type.CREATED, result.getCustomer());
+                case UPDATE -> customerEventOutbox.record(CustomerEventEntity.Type.UPDATED, result.getCustomer());
+                case DELETE -> customerEventOutbox.recordDelete(result.getId());
+            }
+        }
+
+        // the returned customers are detached, nothing of this chunk stays managed until the end of the request
+        customerRepository.flush();
+        entityManager.clear();
+
+        if (commitListener != null) {
+            CustomerBulkItemResult[] committingResults = decidedResults.clone();
+            results.forEach((index, result) -> committingResults[index] = result);
+            commitListener.beforeCommit(Arrays.asList(committingResults));
+        }
+        return results;
+    }
+
+    private CustomerBulkItemResult apply(
+            int index,
+            CustomerBulkOperationDTO operation,
+            Map<Long, CustomerEntity> existingCustomers,
+            Map<Integer, CustomerEntity> previousCustomers
+    ) {
+        CustomerDTO customerDTO = operation.getCustomer();
+
+        // creates are saved together, see applyInTransaction
+        switch (operation.getOperation()) {
+            case UPDATE: {
+                // managed entities are dirty checked, so the updates are batched on flush
+                CustomerEntity customer = existingCustomers.get(operation.getId());
+                if (customer == null) {
+                    return failure(index, operation, HttpStatus.NOT_FOUND, "Customer with the ID does not exist");
+                }
+                // only the email of the previous state matters to the statistics
+                CustomerEntity previousCustomer = new CustomerEntity(customer.getFirstName(), customer.getLastName(), customer.getEmail());
+                previousCustomer.setCreatedDtime(customer.getCreatedDtime());
+                previousCustomers.put(index, previousCustomer);
+                customer.setFirstName(customerDTO.getFirstName());
+                customer.setLastName(customerDTO.getLastName());
+                customer.setEmail(customerDTO.getEmail());
+                return success(index, operation, HttpStatus.OK, customer);
+            }
+            case DELETE: {
+                CustomerEntity customer = existingCustomers.remove(operation.getId());
+                if (customer == null) {
+                    return failure(index, operation, HttpStatus.NOT_FOUND, "Customer deletion failed");
+                }
+                customerRepository.delete(customer);
+                // inserted on flush, batched with the other tombstones of the chunk
+                customerTombstoneRepository.save(new CustomerTombstoneEntity(customer.getId()));
+                previousCustomers.put(index, customer);
+                return new CustomerBulkItemResult(index, operation.getOperation(), operation.getId(),
+                        HttpStatus.OK.value(), true, "Customer deleted successfully", null);
+            }
+            default:
+                throw new IllegalStateException("Unhandled bulk operation " + operation.getOperation());
+        }
+    }
+
+    private CustomerBulkItemResult validate(int index, CustomerBulkOperationDTO operation) {
+        if (operation == null || operation.getOperation() == null) {
+            return failure(index, operation, HttpStatus.BAD_REQUEST, "Missing operation, expected CREATE, UPDATE or DELETE");
+        }
+
+        if (operation.getOperation() != Operation.CREATE && operation.getId() == null) {
+            return failure(index, operation, HttpStatus.BAD_REQUEST, "Missing id, required for UPDATE and DELETE");
+        }
+
+        if (operation.getOperation() != Operation.DELETE) {
+            CustomerDTO customer = operation.getCustomer();
+            if (customer == null
+                    || customer.getFirstName() == null
+                    || customer.getLastName() == null
+                    || customer.getEmail() == null) {
+                return failure(index, operation, HttpStatus.BAD_REQUEST, "Failed due to null values");
+            }
+
+            if (!validator.validate(customer).isEmpty()) {
+                return failure(index, operation, HttpStatus.BAD_REQUEST,
+                        "Failed due to invalid input, check for missing or badly formatted properties");
+            }
+        }
+
+        return null;
+    }
+
+    private static CustomerBulkItemResult success(int index, CustomerBulkOperationDTO operation, HttpStatus status, CustomerEntity customer) {
+        // created customers only get their id once saved, so the id is taken from the entity
+        return new CustomerBulkItemResult(index, operation.getOperation(), customer.getId(),
+                status.value(), true, null, customer);
+    }
+
+    private static CustomerBulkItemResult failure(int index, CustomerBulkOperationDTO operation, HttpStatus status, String message) {
+        return new CustomerBulkItemResult(
+                index,
+                operation == null ? null : operation.getOperation(),
+                operation == null ? null : operation.getId(),
+                status.value(),
+                false,
+                message,
+                null
+        );
+    }
+}
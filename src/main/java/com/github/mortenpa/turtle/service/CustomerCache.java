@@ -0,0 +1,68 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentMap;
+
+/*
+    The customer read cache, shared by CustomerService, _bulk and the reactive API.
+
+    A read that misses loads the customer without holding anything, so it can put what it read after a write of the
+    same customer has committed and cached the new state, which would then be served until it expires. A put never
+    replaces a customer at the same or a higher version, and a delete leaves a marker that keeps the id out of the
+    cache until it expires, ids are never reused. Only a Caffeine cache can be checked and written atomically like
+    that, any other cache (spring.cache.type=none) gets plain puts and evicts.
+ */
+@Component
+public class CustomerCache {
+
+    // stands in for a deleted customer, never returned
+    private static final CustomerEntity DELETED = new CustomerEntity();
+
+    // null if there is no customer cache
+    private final Cache cache;
+    // the entries of the Caffeine cache, null for any other cache
+    private final ConcurrentMap<Object, Object> caffeineEntries;
+
+    @Autowired
+    @SuppressWarnings("unchecked")
+    public CustomerCache(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache(CustomerService.CUSTOMER_CACHE);
+        this.caffeineEntries = cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache
+                ? (ConcurrentMap<Object, Object>) caffeineCache.asMap()
+                : null;
+    }
+
+    // null if the customer is not cached or was deleted
+    public CustomerEntity get(long customerId) {
+        CustomerEntity cachedCustomer = cache == null ? null : cache.get(customerId, CustomerEntity.class);
+        return cachedCustomer == DELETED ? null : cachedCustomer;
+    }
+
+    // only ever moves a customer forward, see above
+    public void put(CustomerEntity customer) {
+        if (caffeineEntries != null) {
+            caffeineEntries.compute(customer.getId(), (customerId, cached) ->
+                    cached instanceof CustomerEntity cachedCustomer && (cachedCustomer == DELETED || cachedCustomer.getVersion() >= customer.getVersion())
+                            ? cached
+                            : customer);
+        }
+        else if (cache != null) {
+            cache.put(customer.getId(), customer);
+        }
+    }
+
+    // only call this after the delete has been committed
+    public void deleted(long customerId) {
+        if (caffeineEntries != null) {
+            caffeineEntries.put(customerId, DELETED);
+        }
+        else if (cache != null) {
+            cache.evict(customerId);
+        }
+    }
+}
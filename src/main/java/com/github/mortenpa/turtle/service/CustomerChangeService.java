@@ -0,0 +1,119 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerChange;
+import com.github.mortenpa.turtle.data.dto.CustomerChanges;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerTombstoneEntity;
+import com.github.mortenpa.turtle.error.ChangeCursorExpiredException;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import com.github.mortenpa.turtle.repository.CustomerTombstoneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+    Customers changed after a cursor, for replicas that sync incrementally instead of reading the whole table.
+
+    Created and updated customers are read in (modified_datetime, id) order on its index, deleted customers from the
+    tombstones in the same order, and the two are merged. Each poll costs two index range scans over the changes
+    since the cursor, however big the table is. A customer changed several times shows up once, in its latest state.
+
+    Datetimes are taken before the commit, a change can become visible with a datetime older than changes that were
+    already returned. Only changes older than the settle time are returned, so a cursor never moves past a change
+    that is still being committed. The last page moves the cursor up to the settle time, also when it is empty.
+
+    Tombstones are purged after the retention period, a cursor older than that could have missed deletes and is
+    refused, the consumer has to sync again from the start.
+ */
+@Service
+public class CustomerChangeService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerChangeService.class);
+
+    // where a consumer without a cursor starts, before any customer, ids start from 1
+    private static final OffsetDateTime START = Instant.EPOCH.atOffset(ZoneOffset.UTC);
+
+    private static final Comparator<CustomerChange> CHANGE_ORDER = Comparator
+            .comparing(CustomerChange::getDatetime, OffsetDateTime.timeLineOrder())
+            .thenComparingLong(CustomerChange::getId);
+
+    private final CustomerRepository customerRepository;
+    private final CustomerTombstoneRepository customerTombstoneRepository;
+
+    @Value("${turtleman.changes.settle-time:PT5S}")
+    private Duration settleTime;
+
+    @Value("${turtleman.changes.tombstone-retention:P7D}")
+    private Duration tombstoneRetention;
+
+    @Autowired
+    public CustomerChangeService(CustomerRepository customerRepository, CustomerTombstoneRepository customerTombstoneRepository) {
+        this.customerRepository = customerRepository;
+        this.customerTombstoneRepository = customerTombstoneRepository;
+    }
+
+    public CustomerChanges getChanges(String cursor, int limit) {
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime datetime = START;
+        long id = 0;
+
+        if (cursor != null) {
+            CustomerPageToken token = CustomerPageToken.decode(cursor, CustomerSortField.MODIFIED_DATETIME);
+            if (token.getDatetime().isBefore(now.minus(tombstoneRetention))) {
+                throw new ChangeCursorExpiredException("Change cursor is older than the tombstone retention of " + tombstoneRetention);
+            }
+            datetime = token.getDatetime();
+            id = token.getId();
+        }
+
+        // one extra change from each to find out if there are more
+        OffsetDateTime until = now.minus(settleTime);
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+        List<CustomerChange> changes = new ArrayList<>();
+        for (CustomerEntity customer : customerRepository.findChangesAfter(datetime, id, until, pageable)) {
+            changes.add(new CustomerChange(customer.getId(), false, customer.getModifiedDtime(), customer));
+        }
+        for (CustomerTombstoneEntity tombstone : customerTombstoneRepository.findChangesAfter(datetime, id, until, pageable)) {
+            changes.add(new CustomerChange(tombstone.getCustomerId(), true, tombstone.getDeletedDtime(), null));
+        }
+        changes.sort(CHANGE_ORDER);
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+            CustomerChange last = changes.get(changes.size() - 1);
+            String nextCursor = CustomerPageToken.encode(CustomerSortField.MODIFIED_DATETIME, last.getDatetime(), last.getId());
+            return new CustomerChanges(changes, nextCursor, true);
+        }
+
+        // every change before until was returned, the cursor moves up to it even when nothing changed, so that
+        // a consumer of a quiet table is not refused after the retention period
+        if (!until.isAfter(datetime)) {
+            return new CustomerChanges(changes, cursor, false);
+        }
+        return new CustomerChanges(changes, CustomerPageToken.encode(CustomerSortField.MODIFIED_DATETIME, until, 0), false);
+    }
+
+    @Scheduled(
+            initialDelayString = "${turtleman.changes.purge-interval:PT1H}",
+            fixedDelayString = "${turtleman.changes.purge-interval:PT1H}"
+    )
+    public void purgeTombstones() {
+        int purged = customerTombstoneRepository.deleteDeletedBefore(OffsetDateTime.now().minus(tombstoneRetention));
+        log.info("Purged {} customer tombstones older than {}", purged, tombstoneRetention);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/*
+    Answers "is this normalized email in use?" without going to the database for emails that are not.
+
+    A Bloom filter of every email in the table is kept in memory. Only when the filter says an email might exist
+    is the database asked, so a positive answer is always confirmed and a false positive costs one indexed lookup.
+    Created and updated emails are added after they are committed, deleted ones stay in the filter until the next
+    rebuild. The unique constraints stay in place, they still catch races and writes from other instances.
+ */
+@Service
+public class CustomerEmailRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerEmailRegistry.class);
+
+    // keeps the IN lists of the confirmation query at a sane size
+    private static final int CONFIRM_CHUNK_SIZE = 1000;
+
+    private final CustomerRepository customerRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Value("${turtleman.email-filter.expected-emails:1000000}")
+    private long expectedEmails;
+
+    @Value("${turtleman.email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // null until the first build finished, every email is then confirmed by the database
+    private volatile EmailBloomFilter filter;
+    // the filter being built by a running rebuild, it receives the emails committed in the meantime as well
+    private volatile EmailBloomFilter nextFilter;
+
+    @Autowired
+    public CustomerEmailRegistry(CustomerRepository customerRepository, PlatformTransactionManager transactionManager) {
+        this.customerRepository = customerRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public boolean isTaken(String emailNormalized) {
+        return mightBeTaken(emailNormalized) && customerRepository.existsByEmailNormalized(emailNormalized);
+    }
+
+    // false means the email is certainly free, true has to be confirmed by the database
+    public boolean mightBeTaken(String emailNormalized) {
+        if (emailNormalized == null) {
+            return false;
+        }
+
+        EmailBloomFilter current = filter;
+        return current == null || current.mightContain(emailNormalized);
+    }
+
+    // the subset of the given normalized emails that are in use, with a single query for all the maybes
+    public Set<String> findTaken(Collection<String> emailsNormalized) {
+        List<String> maybeTaken = new ArrayList<>();
+        for (String email : new LinkedHashSet<>(emailsNormalized)) {
+            if (mightBeTaken(email)) {
+                maybeTaken.add(email);
+            }
+        }
+
+        Set<String> taken = new HashSet<>();
+        for (int start = 0; start < maybeTaken.size(); start += CONFIRM_CHUNK_SIZE) {
+            List<String> chunk = maybeTaken.subList(start, Math.min(start + CONFIRM_CHUNK_SIZE, maybeTaken.size()));
+            taken.addAll(customerRepository.findExistingEmailNormalized(chunk));
+        }
+        return taken;
+    }
+
+    // only call this after the email has been committed, see rebuild
+    public void add(String emailNormalized) {
+        if (emailNormalized == null) {
+            return;
+        }
+
+        // the next filter has to be read first, otherwise an email could slip past a rebuild that swaps in between
+        EmailBloomFilter next = nextFilter;
+        if (next != null) {
+            next.add(emailNormalized);
+        }
+        EmailBloomFilter current = filter;
+        if (current != null) {
+            current.add(emailNormalized);
+        }
+    }
+
+    // in the background like the search index, readiness after a restart on a large table is not held up by the scan
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread builder = new Thread(this::buildInBackground, "customer-email-filter");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void buildInBackground() {
+        try {
+            rebuild();
+        } catch (RuntimeException exception) {
+            // not fatal, without a filter every check goes to the database
+            log.error("Building the email filter failed: {}", exception.getMessage(), exception);
+        }
+    }
+
+    // drops deleted emails and resizes the filter to the table
+    @Scheduled(
+            initialDelayString = "${turtleman.email-filter.rebuild-interval:PT1H}",
+            fixedDelayString = "${turtleman.email-filter.rebuild-interval:PT1H}"
+    )
+    public synchronized void rebuild() {
+        long startTime = System.nanoTime();
+        // twice the current size, so that the filter stays accurate while the table grows until the next rebuild
+        EmailBloomFilter rebuilt = new EmailBloomFilter(Math.max(expectedEmails, 2 * customerRepository.count()), falsePositiveRate);
+
+        /*
+            Emails committed before the stream starts are read by it, the ones committed after nextFilter is set
+            are added by add(). Since add() is only called after the commit, every email ends up in the new filter.
+         */
+        nextFilter = rebuilt;
+        try {
+            Long emails = readOnlyTransactionTemplate.execute(status -> {
+                long count = 0;
+                try (Stream<String> stream = customerRepository.streamAllEmailNormalized()) {
+                    for (Iterator<String> iterator = stream.iterator(); iterator.hasNext(); count++) {
+                        rebuilt.add(iterator.next());
+                    }
+                }
+                return count;
+            });
+            filter = rebuilt;
+            log.info("Built the email filter from {} emails in {} ms", emails, (System.nanoTime() - startTime) / 1_000_000);
+        } finally {
+            nextFilter = null;
+        }
+    }
+}
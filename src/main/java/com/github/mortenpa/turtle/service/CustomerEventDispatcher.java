@@ -0,0 +1,275 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
+import com.github.mortenpa.turtle.repository.CustomerEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Pushes the events of the customer_event outbox to Server-Sent Events subscribers.
+
+    A single dispatcher polls the outbox for new events while there are subscribers and offers each event to every
+    subscriber's bounded buffer. Every subscriber has a virtual thread of its own that sends from its buffer, so a
+    slow client only ever fills its own buffer. A subscriber whose buffer is full is dropped instead of waiting for it,
+    and the client reconnects with Last-Event-ID.
+
+    Event ids are taken before the commit, so an event can become visible after events with higher ids. The dispatcher
+    does not move past a missing id until it has waited gap-timeout for it, after that the id is skipped, it is most
+    likely a rolled back write or an unused id of the pool. Skipped ids are looked up again for late-event-window,
+    an event that is committed that late is still pushed, after events with higher ids.
+
+    A subscriber that comes with a Last-Event-ID first gets the events after it from the outbox, up to where the
+    dispatcher was when it subscribed, and then the live events. If that event is not in the outbox anymore the
+    subscriber gets a reset event and has to sync again, for example with the change feed.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CustomerEventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerEventDispatcher.class);
+
+    // events read from the outbox per query, by the dispatcher and by replays
+    private static final int READ_BATCH_SIZE = 500;
+
+    // skipped ids that are looked up again, a gap larger than this is most likely not made up of open transactions
+    private static final int MAX_SKIPPED_IDS = 10 * READ_BATCH_SIZE;
+
+    // put into the buffer of a dropped subscriber, its sending thread completes the stream when it gets to it
+    private static final CustomerEventEntity DROPPED = new CustomerEventEntity();
+
+    private final CustomerEventRepository customerEventRepository;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    @Value("${turtleman.events.subscriber-buffer:1000}")
+    private int subscriberBuffer;
+
+    @Value("${turtleman.events.gap-timeout:PT2S}")
+    private Duration gapTimeout;
+
+    @Value("${turtleman.events.late-event-window:PT1M}")
+    private Duration lateEventWindow;
+
+    @Value("${turtleman.events.heartbeat-interval:PT15S}")
+    private Duration heartbeatInterval;
+
+    @Value("${turtleman.events.emitter-timeout:PT30M}")
+    private Duration emitterTimeout;
+
+    // the last dispatched event id, -1 while there are no subscribers, guarded by this
+    private long position = -1;
+    // when the dispatcher started waiting at a missing id, 0 when it is not waiting
+    private long gapSinceNanos;
+    // the ids skipped after the gap timeout and when they were skipped, oldest first, guarded by this
+    private final Map<Long, Long> skippedIds = new LinkedHashMap<>();
+
+    @Autowired
+    public CustomerEventDispatcher(CustomerEventRepository customerEventRepository) {
+        this.customerEventRepository = customerEventRepository;
+    }
+
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        // one more slot for DROPPED
+        Subscriber subscriber = new Subscriber(emitter, new ArrayBlockingQueue<>(subscriberBuffer + 1));
+
+        long replayUntil;
+        Set<Long> skippedUntilReplay;
+        synchronized (this) {
+            if (position < 0) {
+                position = customerEventRepository.findMaxEventId().orElse(0L);
+                gapSinceNanos = 0;
+                skippedIds.clear();
+            }
+            // the buffer receives every event after this one, and the skipped ones before it that show up later
+            replayUntil = position;
+            skippedUntilReplay = lastEventId == null ? Set.of() : Set.copyOf(skippedIds.keySet());
+            subscribers.add(subscriber);
+        }
+
+        emitter.onCompletion(() -> drop(subscriber));
+        emitter.onTimeout(() -> drop(subscriber));
+        emitter.onError(error -> drop(subscriber));
+        Thread.ofVirtual()
+                .name("customer-events-subscriber")
+                .start(() -> send(subscriber, lastEventId, replayUntil, skippedUntilReplay));
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${turtleman.events.poll-interval:PT0.1S}")
+    public synchronized void dispatch() {
+        // nothing is read without subscribers, the next subscriber starts from the newest event
+        if (subscribers.isEmpty()) {
+            position = -1;
+            skippedIds.clear();
+            return;
+        }
+
+        dispatchSkipped();
+        List<CustomerEventEntity> events = customerEventRepository.findByEventIdGreaterThanOrderByEventIdAsc(
+                position, PageRequest.ofSize(READ_BATCH_SIZE));
+        for (CustomerEventEntity event : events) {
+            if (event.getEventId() != position + 1) {
+                long now = System.nanoTime();
+                if (gapSinceNanos == 0) {
+                    gapSinceNanos = now;
+                }
+                if (now - gapSinceNanos < gapTimeout.toNanos()) {
+                    return;
+                }
+                for (long eventId = Math.max(position + 1, event.getEventId() - MAX_SKIPPED_IDS); eventId < event.getEventId(); eventId++) {
+                    skippedIds.put(eventId, now);
+                }
+            }
+            gapSinceNanos = 0;
+            position = event.getEventId();
+            offer(event);
+        }
+
+        // the oldest ones are given up first
+        Iterator<Long> oldestSkipped = skippedIds.keySet().iterator();
+        while (skippedIds.size() > MAX_SKIPPED_IDS) {
+            oldestSkipped.next();
+            oldestSkipped.remove();
+        }
+    }
+
+    // the skipped ids that were committed after all, a primary key lookup of a few ids per poll for late-event-window
+    private void dispatchSkipped() {
+        long now = System.nanoTime();
+        skippedIds.values().removeIf(skippedNanos -> now - skippedNanos >= lateEventWindow.toNanos());
+        if (skippedIds.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(skippedIds.keySet());
+        for (int from = 0; from < ids.size(); from += READ_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + READ_BATCH_SIZE, ids.size()));
+            for (CustomerEventEntity event : customerEventRepository.findByEventIdInOrderByEventIdAsc(batch)) {
+                log.debug("Customer event {} was committed after it had been skipped", event.getEventId());
+                skippedIds.remove(event.getEventId());
+                offer(event);
+            }
+        }
+    }
+
+    private void offer(CustomerEventEntity event) {
+        for (Subscriber subscriber : subscribers) {
+            // never waits, a subscriber that can't keep up is dropped
+            if (subscriber.buffer.size() >= subscriberBuffer || !subscriber.buffer.offer(event)) {
+                log.info("Dropping a customer event subscriber, its buffer of {} events is full", subscriberBuffer);
+                drop(subscriber);
+            }
+        }
+    }
+
+    // the sending thread completes the emitter, the dispatcher must not wait for a send in progress
+    // not interrupted either, an interrupt can close the file channel of a file-based H2 database
+    private void drop(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.buffer.clear();
+            subscriber.buffer.offer(DROPPED);
+        }
+    }
+
+    private void send(Subscriber subscriber, Long lastEventId, long replayUntil, Set<Long> skippedUntilReplay) {
+        try {
+            // sends the response headers, the subscriber is registered by now
+            subscriber.emitter.send(SseEmitter.event().comment("subscribed"));
+
+            Set<Long> replayedSkippedIds = Set.of();
+            if (lastEventId != null) {
+                replayedSkippedIds = replay(subscriber.emitter, lastEventId, replayUntil, skippedUntilReplay);
+            }
+
+            while (true) {
+                CustomerEventEntity event = subscriber.buffer.poll(heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (event == DROPPED) {
+                    break;
+                }
+                else if (event == null) {
+                    // keeps proxies from closing an idle stream, and finds out about clients that are gone
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+                // the replay may have sent it already, if it was skipped before the subscription and then committed
+                else if (!replayedSkippedIds.contains(event.getEventId())) {
+                    sendEvent(subscriber.emitter, event);
+                }
+            }
+            subscriber.emitter.complete();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            subscriber.emitter.complete();
+        } catch (IOException | IllegalStateException exception) {
+            // the client is gone, or the emitter was completed or timed out in the meantime
+            log.debug("Customer event subscriber disconnected: {}", exception.getMessage());
+        } finally {
+            drop(subscriber);
+        }
+    }
+
+    // returns the skipped ids it sent, the only ones the buffer can hold as well
+    private Set<Long> replay(SseEmitter emitter, long lastEventId, long replayUntil, Set<Long> skippedUntilReplay) throws IOException {
+        if (lastEventId > replayUntil || (lastEventId < replayUntil && !customerEventRepository.existsById(lastEventId))) {
+            emitter.send(SseEmitter.event().name("reset").data("{}", MediaType.APPLICATION_JSON));
+            return Set.of();
+        }
+
+        Set<Long> replayedSkippedIds = new HashSet<>();
+        long lastSentId = lastEventId;
+        while (lastSentId < replayUntil) {
+            List<CustomerEventEntity> events = customerEventRepository.findByEventIdGreaterThanAndEventIdLessThanEqualOrderByEventIdAsc(
+                    lastSentId, replayUntil, PageRequest.ofSize(READ_BATCH_SIZE));
+            if (events.isEmpty()) {
+                break;
+            }
+            for (CustomerEventEntity event : events) {
+                sendEvent(emitter, event);
+                lastSentId = event.getEventId();
+                if (skippedUntilReplay.contains(lastSentId)) {
+                    replayedSkippedIds.add(lastSentId);
+                }
+            }
+        }
+        return replayedSkippedIds;
+    }
+
+    private static void sendEvent(SseEmitter emitter, CustomerEventEntity event) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(String.valueOf(event.getEventId()))
+                .name(event.getType().name().toLowerCase(Locale.ROOT))
+                .data(event.getPayload(), MediaType.APPLICATION_JSON));
+    }
+
+    private static class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<CustomerEventEntity> buffer;
+
+        Subscriber(SseEmitter emitter, BlockingQueue<CustomerEventEntity> buffer) {
+            this.emitter = emitter;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.mortenpa.turtle.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
+import com.github.mortenpa.turtle.repository.CustomerEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+/*
+    Records customer writes as events in the customer_event table, for CustomerEventDispatcher to push to subscribers.
+
+    record() has to be called inside the transaction of the write, so that an event exists if and only if the write
+    was committed. The insert is flushed with the rest of the transaction, and batched with the other events of a
+    _bulk chunk. Events are kept for the retention period so that reconnecting subscribers can resume.
+ */
+@Service
+public class CustomerEventOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerEventOutbox.class);
+
+    private final CustomerEventRepository customerEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${turtleman.events.retention:PT1H}")
+    private Duration retention;
+
+    @Autowired
+    public CustomerEventOutbox(CustomerEventRepository customerEventRepository, ObjectMapper objectMapper) {
+        this.customerEventRepository = customerEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    // the customer as it was written, for creates and updates its datetimes and version have to be set already
+    public void record(CustomerEventEntity.Type type, CustomerEntity customer) {
+        customerEventRepository.save(new CustomerEventEntity(customer.getId(), type, toJson(customer)));
+    }
+
+    public void recordDelete(long customerId) {
+        customerEventRepository.save(new CustomerEventEntity(customerId, CustomerEventEntity.Type.DELETED, toJson(Map.of("id", customerId))));
+    }
+
+    @Scheduled(
+            initialDelayString = "${turtleman.events.purge-interval:PT5M}",
+            fixedDelayString = "${turtleman.events.purge-interval:PT5M}"
+    )
+    public void purge() {
+        int purged = customerEventRepository.deleteCreatedBefore(OffsetDateTime.now().minus(retention));
+        log.debug("Purged {} customer events older than {}", purged, retention);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalStateException("Could not serialize a customer event", exception);
+        }
+    }
+}
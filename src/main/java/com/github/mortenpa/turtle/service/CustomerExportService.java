@@ -0,0 +1,139 @@
+package com.github.mortenpa.turtle.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.github.mortenpa.turtle.data.dto.CustomerFileFormat;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/*
+    Writes the whole customer table to an output stream one row at a time.
+    Rows are detached right after they are written, so the persistence context never holds more than one customer
+    and the heap usage does not depend on the size of the table.
+    Embedded H2 ignores the JDBC fetch size and builds the whole result before handing out the first row, unless
+    the session executes queries lazily. The export turns that on for its connection, so the first row goes out
+    as soon as it is read.
+ */
+@Service
+public class CustomerExportService {
+
+    // flushing often enough keeps the client busy, flushing every row would make the export syscall bound
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private static final String CSV_HEADER = "id,first_name,last_name,email,created_datetime,modified_datetime";
+
+    private final CustomerRepository customerRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public CustomerExportService(CustomerRepository customerRepository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.customerRepository = customerRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    // the stream needs an open connection for as long as it is being read, hence the transaction
+    @Transactional(readOnly = true)
+    public long export(CustomerFileFormat format, OutputStream outputStream) throws IOException {
+        setLazyQueryExecution(true);
+        try (Stream<CustomerEntity> customers = customerRepository.streamAllByOrderByIdAsc()) {
+            return switch (format) {
+                case NDJSON -> writeNdjson(customers.iterator(), outputStream);
+                case CSV -> writeCsv(customers.iterator(), outputStream);
+            };
+        } finally {
+            // the connection goes back to the pool, other queries on it must not run lazily
+            setLazyQueryExecution(false);
+        }
+    }
+
+    // a setting of the H2 session, i.e. of the connection of the current transaction
+    private void setLazyQueryExecution(boolean lazy) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+            }
+        });
+    }
+
+    private long writeNdjson(Iterator<CustomerEntity> customers, OutputStream outputStream) throws IOException {
+        long rows = 0;
+        // the response stream is closed by Spring, not by us
+        SequenceWriter writer = objectMapper.writer()
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValues(outputStream);
+
+        while (customers.hasNext()) {
+            CustomerEntity customer = customers.next();
+            writer.write(customer);
+            entityManager.detach(customer);
+
+            if (++rows == 1 || rows % FLUSH_EVERY_ROWS == 0) {
+                writer.flush();
+            }
+        }
+
+        writer.close();
+        if (rows > 0) {
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+        return rows;
+    }
+
+    private long writeCsv(Iterator<CustomerEntity> customers, OutputStream outputStream) throws IOException {
+        long rows = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+
+        while (customers.hasNext()) {
+            CustomerEntity customer = customers.next();
+            writer.write(Long.toString(customer.getId()));
+            writer.write(',');
+            writer.write(escapeCsv(customer.getFirstName()));
+            writer.write(',');
+            writer.write(escapeCsv(customer.getLastName()));
+            writer.write(',');
+            writer.write(escapeCsv(customer.getEmail()));
+            writer.write(',');
+            writer.write(String.valueOf(customer.getCreatedDtime()));
+            writer.write(',');
+            writer.write(String.valueOf(customer.getModifiedDtime()));
+            writer.write('\n');
+            entityManager.detach(customer);
+
+            if (++rows == 1 || rows % FLUSH_EVERY_ROWS == 0) {
+                writer.flush();
+            }
+        }
+
+        writer.flush();
+        return rows;
+    }
+
+    // RFC 4180 quoting, only applied when the value needs it
+    static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.mortenpa.turtle.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mortenpa.turtle.data.dto.*;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO.Operation;
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerImportEntity.Status;
+import com.github.mortenpa.turtle.error.ImportInProgressException;
+import com.github.mortenpa.turtle.error.InvalidRequestParameterException;
+import com.github.mortenpa.turtle.repository.CustomerImportRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Imports customers from a CSV or NDJSON upload while it is being read.
+
+    Rows are collected into chunks of the bulk chunk size (turtleman.bulk.chunk-size) and handed to the bulk service
+    as CREATE operations, so memory use depends on the chunk size and not on the size of the upload. The bulk service
+    clears the persistence context after every chunk, nothing of a committed chunk stays managed while the upload is
+    read.
+    The progress is saved under the import id in the same transaction as the customers it covers, so a chunk is
+    one commit and a crash can never leave inserted rows behind the saved progress. Posting the same file again
+    with the same import id skips the rows that were already committed, which makes an interrupted import resumable.
+ */
+@Service
+public class CustomerImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+
+    private static final int MAX_REPORTED_REJECTS = 1000;
+
+    private final CustomerBulkService customerBulkService;
+    private final CustomerImportRepository customerImportRepository;
+    private final ObjectMapper objectMapper;
+
+    // imports running in this instance, the same import can't be fed from two uploads at once
+    private final Set<String> runningImports = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CustomerImportService(
+            CustomerBulkService customerBulkService,
+            CustomerImportRepository customerImportRepository,
+            ObjectMapper objectMapper
+    ) {
+        this.customerBulkService = customerBulkService;
+        this.customerImportRepository = customerImportRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public Optional<CustomerImportEntity> getImport(String importId) {
+        return customerImportRepository.findById(importId);
+    }
+
+    public CustomerImportResult importCustomers(String importId, CustomerFileFormat format, InputStream inputStream) throws IOException {
+        if (!runningImports.add(importId)) {
+            throw new ImportInProgressException("Import " + importId + " is already running");
+        }
+
+        try {
+            CustomerImportEntity progress = customerImportRepository.findById(importId)
+                    .orElseGet(() -> new CustomerImportEntity(importId, format));
+
+            if (progress.getStatus() == Status.COMPLETED) {
+                return new CustomerImportResult(progress, List.of());
+            }
+
+            progress.setFormat(format);
+            progress.setStatus(Status.RUNNING);
+            progress = customerImportRepository.save(progress);
+
+            List<CustomerImportReject> rejects = new ArrayList<>();
+            try {
+                progress = importRows(progress, openReader(format, inputStream), rejects);
+                progress.setStatus(Status.COMPLETED);
+            } catch (IOException | RuntimeException exception) {
+                // everything up to committedRows is safely stored, the client can post the file again to resume
+                // read back, the progress in memory may be ahead of a rolled back transaction
+                CustomerImportEntity failedProgress = customerImportRepository.findById(importId).orElse(progress);
+                log.error("Import {} failed after {} rows: {}", importId, failedProgress.getCommittedRows(), exception.getMessage(), exception);
+                failedProgress.setStatus(Status.FAILED);
+                customerImportRepository.save(failedProgress);
+                throw exception;
+            }
+
+            return new CustomerImportResult(customerImportRepository.save(progress), rejects);
+        } finally {
+            runningImports.remove(importId);
+        }
+    }
+
+    private CustomerImportEntity importRows(CustomerImportEntity progress, CustomerRowReader reader, List<CustomerImportReject> rejects) throws IOException {
+        // a chunk of at most this many operations is a single bulk transaction
+        int chunkSize = customerBulkService.getChunkSize();
+        List<CustomerBulkOperationDTO> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkRows = new ArrayList<>(chunkSize);
+        List<CustomerImportReject> chunkRejects = new ArrayList<>();
+        long resumeAfterRow = progress.getCommittedRows();
+
+        while (true) {
+            CustomerDTO customer;
+            try {
+                customer = reader.next();
+            } catch (CustomerRowReader.RowFormatException exception) {
+                if (reader.getRowNumber() > resumeAfterRow) {
+                    chunkRejects.add(new CustomerImportReject(reader.getRowNumber(), exception.getMessage()));
+                }
+                // malformed rows count towards the chunk as well, otherwise a broken file would pile them up
+                if (chunk.size() + chunkRejects.size() >= chunkSize) {
+                    progress = commitChunk(progress, chunk, chunkRows, chunkRejects, reader.getRowNumber(), rejects);
+                }
+                continue;
+            }
+
+            if (customer == null) {
+                break;
+            }
+
+            // rows committed by an earlier attempt are parsed but not imported again
+            if (reader.getRowNumber() <= resumeAfterRow) {
+                continue;
+            }
+
+            chunk.add(new CustomerBulkOperationDTO(Operation.CREATE, null, customer));
+            chunkRows.add(reader.getRowNumber());
+
+            if (chunk.size() + chunkRejects.size() >= chunkSize) {
+                progress = commitChunk(progress, chunk, chunkRows, chunkRejects, reader.getRowNumber(), rejects);
+            }
+        }
+
+        if (!chunk.isEmpty() || !chunkRejects.isEmpty() || reader.getRowNumber() > progress.getCommittedRows()) {
+            progress = commitChunk(progress, chunk, chunkRows, chunkRejects, reader.getRowNumber(), rejects);
+        }
+        return progress;
+    }
+
+    private CustomerImportEntity commitChunk(
+            CustomerImportEntity progress,
+            List<CustomerBulkOperationDTO> chunk,
+            List<Long> chunkRows,
+            List<CustomerImportReject> chunkRejects,
+            long lastRow,
+            List<CustomerImportReject> rejects
+    ) {
+        long acceptedBefore = progress.getAcceptedRows();
+        long rejectedBefore = progress.getRejectedRows();
+        List<CustomerBulkItemResult> results = customerBulkService.execute(chunk, committingResults ->
+                saveProgress(progress, acceptedBefore, rejectedBefore, chunkRows, chunkRejects, lastRow, committingResults));
+
+        // everything is decided now, this also stores the rows that failed after the last commit, they inserted nothing
+        CustomerImportEntity savedProgress = saveProgress(progress, acceptedBefore, rejectedBefore, chunkRows, chunkRejects, lastRow, results);
+
+        for (CustomerBulkItemResult result : results) {
+            if (!result.isSuccess()) {
+                chunkRejects.add(new CustomerImportReject(chunkRows.get(result.getIndex()), result.getMessage()));
+            }
+        }
+        for (CustomerImportReject reject : chunkRejects) {
+            if (rejects.size() < MAX_REPORTED_REJECTS) {
+                rejects.add(reject);
+            }
+        }
+
+        chunk.clear();
+        chunkRows.clear();
+        chunkRejects.clear();
+        return savedProgress;
+    }
+
+    /*
+        Moves the progress up to the row before the first operation that is not decided yet, or to the last row of
+        the chunk once all are. Always counted from the start of the chunk, so a transaction that is rolled back and
+        replayed by the bulk service counts nothing twice.
+     */
+    private CustomerImportEntity saveProgress(
+            CustomerImportEntity progress,
+            long acceptedBefore,
+            long rejectedBefore,
+            List<Long> chunkRows,
+            List<CustomerImportReject> malformedRows,
+            long lastRow,
+            List<CustomerBulkItemResult> results
+    ) {
+        int decided = 0;
+        long accepted = 0;
+        long rejected = 0;
+        for (; decided < results.size() && results.get(decided) != null; decided++) {
+            if (results.get(decided).isSuccess()) {
+                accepted++;
+            }
+            else {
+                rejected++;
+            }
+        }
+
+        long committedRows = decided == results.size() ? lastRow : chunkRows.get(decided) - 1;
+        for (CustomerImportReject malformedRow : malformedRows) {
+            if (malformedRow.getRow() <= committedRows) {
+                rejected++;
+            }
+        }
+
+        progress.setCommittedRows(committedRows);
+        progress.setAcceptedRows(acceptedBefore + accepted);
+        progress.setRejectedRows(rejectedBefore + rejected);
+        return customerImportRepository.save(progress);
+    }
+
+    private CustomerRowReader openReader(CustomerFileFormat format, InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        try {
+            return switch (format) {
+                case NDJSON -> new NdjsonCustomerRowReader(reader, objectMapper.readerFor(CustomerDTO.class));
+                case CSV -> new CsvCustomerRowReader(reader);
+            };
+        } catch (CustomerRowReader.RowFormatException exception) {
+            // without a usable header none of the rows can be read
+            throw new InvalidRequestParameterException(exception.getMessage());
+        }
+    }
+}
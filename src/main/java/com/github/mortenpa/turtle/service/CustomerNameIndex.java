@@ -0,0 +1,174 @@
+package com.github.mortenpa.turtle.service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/*
+    An in-memory index of the tokens in customer first and last names, for type-ahead search.
+
+    Tokens are lower-cased and stripped of accents, and kept in a sorted map so that all tokens starting with a prefix
+    are one range of the map. Close typos are found by comparing against the tokens that share the first letter.
+    Searches may run concurrently with each other and with one writer, writes must not run concurrently.
+ */
+final class CustomerNameIndex {
+
+    // how many ids a single query token may contribute, keeps one letter prefixes cheap on a large table
+    private static final int MAX_CANDIDATES_PER_TOKEN = 10_000;
+    // how many tokens are compared for typos per query token
+    private static final int MAX_FUZZY_COMPARISONS = 50_000;
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FUZZY_SCORE = 1;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ConcurrentSkipListMap<String, Set<Long>> idsByToken = new ConcurrentSkipListMap<>();
+    // needed to remove the old tokens of a customer whose name changed
+    private final ConcurrentHashMap<Long, String[]> tokensById = new ConcurrentHashMap<>();
+
+    void put(long id, String firstName, String lastName) {
+        String[] tokens = tokenize(firstName + " " + lastName);
+        String[] previousTokens = tokensById.put(id, tokens);
+
+        if (previousTokens != null) {
+            List<String> currentTokens = Arrays.asList(tokens);
+            for (String token : previousTokens) {
+                if (!currentTokens.contains(token)) {
+                    removeId(token, id);
+                }
+            }
+        }
+        for (String token : tokens) {
+            idsByToken.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    void remove(long id) {
+        String[] tokens = tokensById.remove(id);
+        if (tokens != null) {
+            for (String token : tokens) {
+                removeId(token, id);
+            }
+        }
+    }
+
+    int size() {
+        return tokensById.size();
+    }
+
+    // ids of the best matching customers, best first, customers matching more of the query tokens rank higher
+    List<Long> search(String query, int limit) {
+        Map<Long, Integer> scores = new HashMap<>();
+
+        for (String token : tokenize(query)) {
+            Map<Long, Integer> tokenScores = new HashMap<>();
+            collectPrefixMatches(token, tokenScores);
+            if (tokenScores.size() < limit && token.length() >= MIN_FUZZY_LENGTH) {
+                collectFuzzyMatches(token, tokenScores);
+            }
+            tokenScores.forEach((id, score) -> scores.merge(id, score, Integer::sum));
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // the exact token sorts first in its prefix range, followed by the longer tokens
+    private void collectPrefixMatches(String token, Map<Long, Integer> tokenScores) {
+        int candidates = 0;
+        for (Map.Entry<String, Set<Long>> entry : idsByToken.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+            int score = entry.getKey().length() == token.length() ? EXACT_SCORE : PREFIX_SCORE;
+            for (Long id : entry.getValue()) {
+                tokenScores.merge(id, score, Math::max);
+                if (++candidates >= MAX_CANDIDATES_PER_TOKEN) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // typos in the first letter are rare, so only the tokens starting with the same letter are compared
+    private void collectFuzzyMatches(String token, Map<Long, Integer> tokenScores) {
+        int maxDistance = token.length() >= 8 ? 2 : 1;
+        char firstLetter = token.charAt(0);
+        String from = String.valueOf(firstLetter);
+        String to = String.valueOf((char) (firstLetter + 1));
+
+        int comparisons = 0;
+        int candidates = 0;
+        for (Map.Entry<String, Set<Long>> entry : idsByToken.subMap(from, true, to, false).entrySet()) {
+            if (++comparisons > MAX_FUZZY_COMPARISONS) {
+                return;
+            }
+            String candidate = entry.getKey();
+            if (Math.abs(candidate.length() - token.length()) > maxDistance
+                    || candidate.startsWith(token)
+                    || !isWithinDistance(token, candidate, maxDistance)) {
+                continue;
+            }
+            for (Long id : entry.getValue()) {
+                tokenScores.merge(id, FUZZY_SCORE, Math::max);
+                if (++candidates >= MAX_CANDIDATES_PER_TOKEN) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void removeId(String token, long id) {
+        Set<Long> ids = idsByToken.get(token);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByToken.remove(token, ids);
+            }
+        }
+    }
+
+    // Levenshtein distance, gives up as soon as a whole row is over the maximum distance
+    static boolean isWithinDistance(String a, String b, int maxDistance) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxDistance) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxDistance;
+    }
+
+    // "José-Maria  O'Neil" -> [jose, maria, o, neil]
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return Arrays.stream(TOKEN_SEPARATORS.split(normalized.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.error.InvalidRequestParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/*
+    Continuation token for keyset pagination, it holds the sort key of the last customer on a page.
+    The format is an implementation detail, clients should treat the base64 string as opaque.
+ */
+public class CustomerPageToken {
+
+    private static final String SEPARATOR = "|";
+
+    private final CustomerSortField sortField;
+    private final OffsetDateTime datetime;
+    private final long id;
+
+    private CustomerPageToken(CustomerSortField sortField, OffsetDateTime datetime, long id) {
+        this.sortField = sortField;
+        this.datetime = datetime;
+        this.id = id;
+    }
+
+    public static String encode(CustomerSortField sortField, CustomerEntity lastCustomer) {
+        OffsetDateTime datetime = switch (sortField) {
+            case ID -> null;
+            case CREATED_DATETIME -> lastCustomer.getCreatedDtime();
+            case MODIFIED_DATETIME -> lastCustomer.getModifiedDtime();
+        };
+
+        return encode(sortField, datetime, lastCustomer.getId());
+    }
+
+    // also the cursor of the change feed, which is ordered like the modified datetime pages
+    public static String encode(CustomerSortField sortField, OffsetDateTime datetime, long id) {
+        String token = sortField.name() + SEPARATOR + (datetime == null ? "" : datetime.toString()) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CustomerPageToken decode(String token, CustomerSortField expectedSortField) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = decoded.split("\\|", -1);
+            if (parts.length != 3) {
+                throw new InvalidRequestParameterException("Malformed page token");
+            }
+
+            CustomerSortField sortField = CustomerSortField.valueOf(parts[0]);
+            // a token is only valid for the ordering it was created with
+            if (sortField != expectedSortField) {
+                throw new InvalidRequestParameterException("Page token was issued for a different sort order");
+            }
+
+            OffsetDateTime datetime = parts[1].isEmpty() ? null : OffsetDateTime.parse(parts[1]);
+            if (sortField != CustomerSortField.ID && datetime == null) {
+                throw new InvalidRequestParameterException("Malformed page token");
+            }
+
+            return new CustomerPageToken(sortField, datetime, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException exception) {
+            // NumberFormatException is covered by IllegalArgumentException
+            throw new InvalidRequestParameterException("Malformed page token");
+        }
+    }
+
+    public CustomerSortField getSortField() {
+        return sortField;
+    }
+
+    public OffsetDateTime getDatetime() {
+        return datetime;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
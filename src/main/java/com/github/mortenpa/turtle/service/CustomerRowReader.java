@@ -0,0 +1,21 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+
+import java.io.IOException;
+
+// reads customers from an upload one row at a time, only the current row is ever held in memory
+interface CustomerRowReader {
+
+    // returns null once the input is exhausted, a malformed row is consumed and reported as a RowFormatException
+    CustomerDTO next() throws IOException;
+
+    // number of data rows consumed so far, including malformed ones
+    long getRowNumber();
+
+    class RowFormatException extends RuntimeException {
+        RowFormatException(String errorMessage) {
+            super(errorMessage);
+        }
+    }
+}
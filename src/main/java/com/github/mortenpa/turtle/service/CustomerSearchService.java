@@ -0,0 +1,147 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+    Type-ahead search over customer names, ranked by how well the names match the query.
+
+    The search runs against an in-memory CustomerNameIndex, the matching customers are then loaded with one query.
+    The index is built in the background after startup, until it is done searches fall back to a prefix scan
+    in the database. Writes are applied to the index after they are committed, by CustomerService and the bulk service.
+ */
+@Service
+public class CustomerSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSearchService.class);
+
+    private final CustomerRepository customerRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Value("${turtleman.search.index-enabled:true}")
+    private boolean indexEnabled;
+
+    // null until the build finished
+    private volatile CustomerNameIndex index;
+    // writes committed while the index is being built, replayed on it before it is used, guarded by this
+    private List<Consumer<CustomerNameIndex>> pendingChanges;
+
+    @Autowired
+    public CustomerSearchService(CustomerRepository customerRepository, PlatformTransactionManager transactionManager) {
+        this.customerRepository = customerRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public List<CustomerEntity> search(String query, int limit) {
+        Optional<List<Long>> rankedIds = searchIds(query, limit);
+        if (rankedIds.isEmpty()) {
+            return searchDatabase(query, limit);
+        }
+
+        List<Long> ids = rankedIds.get();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, CustomerEntity> customers = new HashMap<>();
+        for (CustomerEntity customer : customerRepository.findAllById(ids)) {
+            customers.put(customer.getId(), customer);
+        }
+        return ids.stream().map(customers::get).filter(Objects::nonNull).toList();
+    }
+
+    // the ids of the best matches, best first, empty while the index is not built yet
+    public Optional<List<Long>> searchIds(String query, int limit) {
+        CustomerNameIndex current = index;
+        return current == null ? Optional.empty() : Optional.of(current.search(query, limit));
+    }
+
+    // a LIKE pattern for the first token of the query, for scanning the names in the database, null if there is no token
+    public static String namePrefixPattern(String query) {
+        String[] tokens = CustomerNameIndex.tokenize(query);
+        if (tokens.length == 0) {
+            return null;
+        }
+        return tokens[0].replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    // only call these after the write has been committed
+    public synchronized void index(CustomerEntity customer) {
+        apply(nameIndex -> nameIndex.put(customer.getId(), customer.getFirstName(), customer.getLastName()));
+    }
+
+    public synchronized void remove(long customerId) {
+        apply(nameIndex -> nameIndex.remove(customerId));
+    }
+
+    private void apply(Consumer<CustomerNameIndex> change) {
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+        if (index != null) {
+            change.accept(index);
+        }
+    }
+
+    // readiness is not held up by the build, reading 10M names takes a while
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!indexEnabled) {
+            log.info("Customer search index is disabled, searches scan the database");
+            return;
+        }
+
+        Thread builder = new Thread(this::build, "customer-search-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void build() {
+        long startTime = System.nanoTime();
+        CustomerNameIndex built = new CustomerNameIndex();
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+
+        try {
+            readOnlyTransactionTemplate.executeWithoutResult(status -> {
+                try (Stream<CustomerRepository.CustomerName> names = customerRepository.streamAllNames()) {
+                    names.forEach(name -> built.put(name.getId(), name.getFirstName(), name.getLastName()));
+                }
+            });
+
+            // the stream may have read an older state of a customer than the one committed since, so the changes go last
+            synchronized (this) {
+                pendingChanges.forEach(change -> change.accept(built));
+                index = built;
+            }
+            log.info("Built the customer search index from {} customers in {} ms", built.size(), (System.nanoTime() - startTime) / 1_000_000);
+        } catch (RuntimeException exception) {
+            log.error("Building the customer search index failed, searches scan the database: {}", exception.getMessage(), exception);
+        } finally {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+        }
+    }
+
+    private List<CustomerEntity> searchDatabase(String query, int limit) {
+        String prefix = namePrefixPattern(query);
+        return prefix == null ? List.of() : customerRepository.findByNamePrefix(prefix, PageRequest.ofSize(limit));
+    }
+}
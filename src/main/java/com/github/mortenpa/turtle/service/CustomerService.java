@@ -1,74 +1,351 @@
 package com.github.mortenpa.turtle.service;
 
+import com.github.mortenpa.turtle.data.dto.CustomerMultiGet;
+import com.github.mortenpa.turtle.data.dto.CustomerPage;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
 import com.github.mortenpa.turtle.error.DuplicateEmailException;
 import com.github.mortenpa.turtle.error.NullNotAllowedException;
+import com.github.mortenpa.turtle.error.PreconditionFailedException;
 import com.github.mortenpa.turtle.repository.CustomerRepository;
+import com.github.mortenpa.turtle.timing.RequestTimings;
+import com.github.mortenpa.turtle.timing.TimingPhase;
+import io.micrometer.core.annotation.Timed;
+import io.r2dbc.spi.R2dbcException;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
+@Timed("turtleman.customer.service")
 public class CustomerService {
+    // customers by id, anything writing customers outside of this service has to update it through CustomerCache
+    public static final String CUSTOMER_CACHE = "customers";
+
+    // ids per IN query of getByIds, keeps the statement and its plan a bounded size however many ids are asked for
+    public static final int MULTI_GET_CHUNK_SIZE = 500;
+
+    // SQLSTATE classes for integrity constraint violations
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String NOT_NULL_VIOLATION = "23502";
+
     private final CustomerRepository customerRepository;
+    private final Validator validator;
+    private final CustomerEmailRegistry customerEmailRegistry;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerEventOutbox customerEventOutbox;
+    private final CustomerStatsService customerStatsService;
+    private final TransactionTemplate transactionTemplate;
+    private final CustomerCache customerCache;
 
     @Autowired
-    public CustomerService(CustomerRepository customerRepository) {
+    public CustomerService(
+            CustomerRepository customerRepository,
+            Validator validator,
+            CustomerEmailRegistry customerEmailRegistry,
+            CustomerSearchService customerSearchService,
+            CustomerEventOutbox customerEventOutbox,
+            CustomerStatsService customerStatsService,
+            PlatformTransactionManager transactionManager,
+            CustomerCache customerCache
+    ) {
         this.customerRepository = customerRepository;
+        this.validator = validator;
+        this.customerEmailRegistry = customerEmailRegistry;
+        this.customerSearchService = customerSearchService;
+        this.customerEventOutbox = customerEventOutbox;
+        this.customerStatsService = customerStatsService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.customerCache = customerCache;
     }
 
+    // missing customers are not cached, so a later insert never has to evict anything
+    // a read that loses the race against a write does not put the older customer back, see CustomerCache
     public Optional<CustomerEntity> getById(long customerId) {
-        return customerRepository.findById(customerId);
+        CustomerEntity cachedCustomer = customerCache.get(customerId);
+        if (cachedCustomer != null) {
+            return Optional.of(cachedCustomer);
+        }
+        Optional<CustomerEntity> customer = customerRepository.findById(customerId);
+        customer.ifPresent(customerCache::put);
+        return customer;
     }
 
-    public CustomerEntity addOrModify(@Valid CustomerEntity customerEntity) {
-        try {
-            customerRepository.save(customerEntity);
+    // customers in the order of the ids, from the cache where possible and with one IN query per chunk for the rest
+    public CustomerMultiGet getByIds(Collection<Long> customerIds) {
+        Set<Long> distinctIds = new LinkedHashSet<>(customerIds);
+        Map<Long, CustomerEntity> foundCustomers = new HashMap<>();
+        List<Long> uncachedIds = new ArrayList<>();
 
-            // if the save was successful, we fetch the element from the repository
-            // since in some cases the input object is not complete (missing datetimes on modify operations)
-            Optional<CustomerEntity> savedCustomer = customerRepository.findById(customerEntity.getId());
+        for (long customerId : distinctIds) {
+            CustomerEntity cachedCustomer = customerCache.get(customerId);
+            if (cachedCustomer != null) {
+                foundCustomers.put(customerId, cachedCustomer);
+            }
+            else {
+                uncachedIds.add(customerId);
+            }
+        }
 
-            return savedCustomer.orElse(null);
-        // let's deal with any data/constraint violations we might encounter
-        } catch (DataIntegrityViolationException exception) {
-            if (isDuplicateEmailException(exception)) {
-                throw new DuplicateEmailException("Email is not unique!");
+        for (int start = 0; start < uncachedIds.size(); start += MULTI_GET_CHUNK_SIZE) {
+            List<Long> chunk = uncachedIds.subList(start, Math.min(start + MULTI_GET_CHUNK_SIZE, uncachedIds.size()));
+            for (CustomerEntity customer : customerRepository.findAllById(chunk)) {
+                foundCustomers.put(customer.getId(), customer);
+                // like getById, without overwriting a newer customer cached in the meantime
+                customerCache.put(customer);
             }
-            else if (isNullNotAllowedException(exception)) {
-                throw new NullNotAllowedException("null is not allowed for properties");
+        }
+
+        List<CustomerEntity> customers = new ArrayList<>(foundCustomers.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (long customerId : distinctIds) {
+            CustomerEntity customer = foundCustomers.get(customerId);
+            if (customer != null) {
+                customers.add(customer);
             }
             else {
-                throw exception;
+                missingIds.add(customerId);
             }
+        }
+        return new CustomerMultiGet(customers, missingIds);
+    }
+
+    // the version of a customer without loading it, from the cached customer if there is one
+    public Optional<Long> getVersion(long customerId) {
+        CustomerEntity cachedCustomer = customerCache.get(customerId);
+        if (cachedCustomer != null) {
+            return Optional.of(cachedCustomer.getVersion());
+        }
+        return customerRepository.findVersionById(customerId);
+    }
+
+    public Optional<CustomerEntity> getByEmail(String email) {
+        return customerRepository.findByEmailNormalized(CustomerEntity.normalizeEmail(email));
+    }
+
+    // email as given -> whether it is still free, emails differing only in case or surrounding whitespace are the same
+    public Map<String, Boolean> checkEmailAvailability(List<String> emails) {
+        Set<String> taken = customerEmailRegistry.findTaken(emails.stream().map(CustomerEntity::normalizeEmail).toList());
+
+        Map<String, Boolean> availability = new LinkedHashMap<>();
+        for (String email : emails) {
+            availability.put(email, !taken.contains(CustomerEntity.normalizeEmail(email)));
+        }
+        return availability;
+    }
+
+    // keyset pagination, every page is an index range scan no matter how deep into the table it is
+    public CustomerPage getPage(CustomerSortField sortField, String pageToken, int limit) {
+        // fetch one extra customer to find out if there is a next page
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+        List<CustomerEntity> customers;
+
+        if (pageToken == null) {
+            customers = switch (sortField) {
+                case ID -> customerRepository.findAllByOrderByIdAsc(pageable);
+                case CREATED_DATETIME -> customerRepository.findAllByOrderByCreatedDtimeAscIdAsc(pageable);
+                case MODIFIED_DATETIME -> customerRepository.findAllByOrderByModifiedDtimeAscIdAsc(pageable);
+            };
+        }
+        else {
+            CustomerPageToken token = CustomerPageToken.decode(pageToken, sortField);
+            customers = switch (sortField) {
+                case ID -> customerRepository.findPageAfterId(token.getId(), pageable);
+                case CREATED_DATETIME -> customerRepository.findPageAfterCreatedDtime(token.getDatetime(), token.getId(), pageable);
+                case MODIFIED_DATETIME -> customerRepository.findPageAfterModifiedDtime(token.getDatetime(), token.getId(), pageable);
+            };
+        }
+
+        if (customers.size() <= limit) {
+            return new CustomerPage(customers, null);
+        }
+
+        List<CustomerEntity> page = customers.subList(0, limit);
+        return new CustomerPage(page, CustomerPageToken.encode(sortField, page.get(limit - 1)));
+    }
+
+    public CustomerEntity addOrModify(@Valid CustomerEntity customerEntity) {
+        if (customerEntity.getId() == 0) {
+            return add(customerEntity);
+        }
+        else {
+            return modify(customerEntity.getId(), customerEntity).orElse(null);
+        }
+    }
+
+    // a single insert and its event (and a sequence read for every 50th), the saved entity already holds the id and datetimes so there is no need to read it back
+    // known duplicates are turned away before the insert, so retried sign-ups don't end up in a failed insert
+    public CustomerEntity add(@Valid CustomerEntity customerEntity) {
+        if (customerEmailRegistry.isTaken(customerEntity.getEmailNormalized())) {
+            throw new DuplicateEmailException("Email is not unique!");
+        }
+
+        try {
+            CustomerEntity savedCustomer = transactionTemplate.execute(status -> {
+                CustomerEntity customer = customerRepository.save(customerEntity);
+                // constraint violations surface here instead of at the commit, the event is only written for a valid insert
+                customerRepository.flush();
+                customerEventOutbox.record(CustomerEventEntity.Type.CREATED, customer);
+                return customer;
+            });
+            customerCache.put(savedCustomer);
+            customerEmailRegistry.add(savedCustomer.getEmailNormalized());
+            customerSearchService.index(savedCustomer);
+            customerStatsService.added(savedCustomer);
+            return savedCustomer;
+        // let's deal with any data/constraint violations we might encounter
+        } catch (DataIntegrityViolationException exception) {
+            throw translateDataIntegrityViolation(exception);
         } catch (ConstraintViolationException exception) {
             throw new ConstraintViolationException(exception.getConstraintViolations());
         }
     }
 
-    public boolean delete(long customerId) {
-        // start by checking if the customer exists in the repository
-        // since we want to return information about whether the operation was successful
-        if (customerRepository.existsById(customerId)) {
-            customerRepository.deleteById(customerId);
-            return true;
+    // a single update statement that also returns the updated row, empty if the customer does not exist
+    public Optional<CustomerEntity> modify(long customerId, @Valid CustomerEntity customerEntity) {
+        return modify(customerId, customerEntity, null);
+    }
+
+    /*
+        Same as above, but only updates the customer if it is still at one of the expected versions (null for any).
+        Throws a PreconditionFailedException if the customer has been changed in the meantime,
+        the check and the update are the same statement so there is no window for a lost update.
+        The update event is written in the same transaction, only if a customer was updated.
+     */
+    public Optional<CustomerEntity> modify(long customerId, @Valid CustomerEntity customerEntity, Collection<Long> expectedVersions) {
+        // Hibernate only validates the entities it writes itself, the update statement has to be validated here
+        Set<ConstraintViolation<CustomerEntity>> violations;
+        RequestTimings.begin(TimingPhase.VALIDATE);
+        try {
+            violations = validator.validate(customerEntity);
+        } finally {
+            RequestTimings.end(TimingPhase.VALIDATE);
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+
+        try {
+            Optional<Update> update = transactionTemplate.execute(status -> {
+                Optional<Update> customerUpdate = update(customerId, customerEntity, expectedVersions);
+                customerUpdate.ifPresent(committing -> customerEventOutbox.record(CustomerEventEntity.Type.UPDATED, committing.customer()));
+                return customerUpdate;
+            });
+
+            update.ifPresent(committed -> {
+                customerCache.put(committed.customer());
+                customerEmailRegistry.add(committed.customer().getEmailNormalized());
+                customerSearchService.index(committed.customer());
+                customerStatsService.modified(committed.previousCustomer(), committed.customer());
+            });
+            return update.map(Update::customer);
+        } catch (DataIntegrityViolationException exception) {
+            throw translateDataIntegrityViolation(exception);
+        }
+    }
+
+    // the customer before and after an update
+    private record Update(CustomerEntity previousCustomer, CustomerEntity customer) {}
+
+    // the single update statement, with the version check when there are expected versions
+    private Optional<Update> update(long customerId, CustomerEntity customerEntity, Collection<Long> expectedVersions) {
+        String emailNormalized = CustomerEntity.normalizeEmail(customerEntity.getEmail());
+        // the database keeps microseconds, truncating here makes the returned entity match the stored row
+        OffsetDateTime modifiedDtime = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Optional<CustomerEntity> previousCustomer;
+        if (expectedVersions == null) {
+            previousCustomer = customerRepository.updateCustomer(
+                    customerId,
+                    customerEntity.getFirstName(),
+                    customerEntity.getLastName(),
+                    customerEntity.getEmail(),
+                    emailNormalized,
+                    modifiedDtime
+            );
         }
-        return false;
+        else {
+            previousCustomer = expectedVersions.isEmpty() ? Optional.empty() : customerRepository.updateCustomerIfVersion(
+                    customerId,
+                    customerEntity.getFirstName(),
+                    customerEntity.getLastName(),
+                    customerEntity.getEmail(),
+                    emailNormalized,
+                    modifiedDtime,
+                    expectedVersions
+            );
+            // only the failure path pays for finding out whether the customer is missing or was changed
+            if (previousCustomer.isEmpty() && customerRepository.existsById(customerId)) {
+                throw new PreconditionFailedException("Customer " + customerId + " is not at any of the versions " + expectedVersions);
+            }
+        }
+
+        return previousCustomer.map(previous -> new Update(previous, previous.afterUpdate(
+                customerEntity.getFirstName(), customerEntity.getLastName(), customerEntity.getEmail(), modifiedDtime)));
+    }
+
+    public boolean delete(long customerId) {
+        // the deleted row tells us whether the customer existed, no need for a separate existence check
+        Optional<CustomerEntity> deletedCustomer = transactionTemplate.execute(status -> {
+            Optional<CustomerEntity> customer = customerRepository.deleteCustomerWithTombstone(customerId);
+            customer.ifPresent(removedCustomer -> customerEventOutbox.recordDelete(customerId));
+            return customer;
+        });
+        deletedCustomer.ifPresent(customer -> {
+            customerCache.deleted(customerId);
+            customerSearchService.remove(customerId);
+            customerStatsService.removed(customer);
+        });
+        return deletedCustomer.isPresent();
     }
 
-    // this is kinda hacky but it works so ¯\_(ツ)_/¯
-    // using error codes could be an improvement
-    private boolean isDuplicateEmailException(DataIntegrityViolationException exception) {
-        String message = exception.getMessage().toLowerCase();
-        return message.contains("unique index or primary key violation") &&
-               message.contains("public.customer(email nulls first)");
+    // maps database constraint violations to our own exceptions by SQLSTATE, shared with the bulk operations and the reactive API
+    // ids are generated, so the only unique constraints a customer write can violate are the email ones
+    public static RuntimeException translateDataIntegrityViolation(DataIntegrityViolationException exception) {
+        String sqlState = findSqlState(exception);
+
+        if (UNIQUE_VIOLATION.equals(sqlState)) {
+            return new DuplicateEmailException("Email is not unique!");
+        }
+        else if (NOT_NULL_VIOLATION.equals(sqlState)) {
+            return new NullNotAllowedException("null is not allowed for properties");
+        }
+        else {
+            return exception;
+        }
     }
 
-    private boolean isNullNotAllowedException(DataIntegrityViolationException exception) {
-        return exception.getMessage().toLowerCase().contains("null not allowed for column");
+    private static String findSqlState(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+                return sqlException.getSQLState();
+            }
+            if (cause instanceof R2dbcException r2dbcException && r2dbcException.getSqlState() != null) {
+                return r2dbcException.getSqlState();
+            }
+        }
+        return null;
     }
 
 }
@@ -0,0 +1,227 @@
+package com.github.mortenpa.turtle.service;
+
+import com.github.mortenpa.turtle.data.dto.CustomerStats;
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.error.StatsNotReadyException;
+import com.github.mortenpa.turtle.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Customer statistics for dashboards, the total, sign-ups per day and the most common email domains,
+    without scanning the customer table on every read.
+
+    The counters are kept in memory and moved along by CustomerService, ReactiveCustomerService, _bulk and imports
+    after their commits. They are built from the database in the background on startup and rebuilt by a periodic
+    reconciliation, which also picks up what the counters don't follow: writes of other instances and writes
+    committed while a reconciliation was running.
+
+    Reads only look up a fixed number of days and a snapshot of the top domains, however big the table is. The
+    snapshot is taken again every top-domains-refresh. Sign-up days are UTC days.
+ */
+@Service
+public class CustomerStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerStatsService.class);
+
+    // most customers first, ties by domain
+    private static final Comparator<Map.Entry<String, Long>> TOP_DOMAIN_ORDER = Map.Entry.<String, Long>comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry.comparingByKey());
+
+    private final CustomerRepository customerRepository;
+
+    @Value("${turtleman.stats.signup-days:30}")
+    private int signupDays;
+
+    @Value("${turtleman.stats.top-domains:10}")
+    private int topDomains;
+
+    // null until the first build finished
+    private volatile Counters counters;
+
+    @Autowired
+    public CustomerStatsService(CustomerRepository customerRepository) {
+        this.customerRepository = customerRepository;
+    }
+
+    public CustomerStats getStats() {
+        Counters current = counters;
+        if (current == null) {
+            throw new StatsNotReadyException("Customer statistics are not built yet");
+        }
+
+        LocalDate today = today();
+        Map<LocalDate, Long> signupsPerDay = new LinkedHashMap<>();
+        for (LocalDate day = today.minusDays(signupDays - 1); !day.isAfter(today); day = day.plusDays(1)) {
+            signupsPerDay.put(day, current.signupsPerDay.getOrDefault(day, 0L));
+        }
+        return new CustomerStats(current.total.get(), signupsPerDay, current.topDomains, current.reconciledDtime);
+    }
+
+    // only call these after the customer has been committed, see reconcile
+    public void added(CustomerEntity customer) {
+        count(customer, 1);
+    }
+
+    public void removed(CustomerEntity customer) {
+        count(customer, -1);
+    }
+
+    // an update only moves the customer to another domain, the sign-up date never changes
+    public void modified(CustomerEntity previousCustomer, CustomerEntity customer) {
+        Counters current = counters;
+        String previousDomain = emailDomain(previousCustomer.getEmailNormalized());
+        String domain = emailDomain(customer.getEmailNormalized());
+        if (current == null || previousDomain.equals(domain)) {
+            return;
+        }
+
+        add(current.domains, previousDomain, -1);
+        add(current.domains, domain, 1);
+    }
+
+    private void count(CustomerEntity customer, long delta) {
+        Counters current = counters;
+        // the build reads the customer from the table
+        if (current == null) {
+            return;
+        }
+
+        current.total.addAndGet(delta);
+        LocalDate signupDate = signupDate(customer.getCreatedDtime());
+        if (!signupDate.isBefore(today().minusDays(signupDays - 1))) {
+            add(current.signupsPerDay, signupDate, delta);
+        }
+        add(current.domains, emailDomain(customer.getEmailNormalized()), delta);
+    }
+
+    // a count that drops to zero is removed, so that the maps only hold the days and domains that have customers
+    private static <K> void add(ConcurrentHashMap<K, Long> counts, K key, long delta) {
+        counts.merge(key, delta, (count, change) -> count + change == 0 ? null : count + change);
+    }
+
+    // in the background like the email filter, readiness after a restart on a large table is not held up by the queries
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread builder = new Thread(this::buildInBackground, "customer-stats");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void buildInBackground() {
+        try {
+            reconcile();
+        } catch (RuntimeException exception) {
+            // not fatal, the endpoint answers 503 until the next reconciliation succeeds
+            log.error("Building the customer statistics failed: {}", exception.getMessage(), exception);
+        }
+    }
+
+    /*
+        Replaces the counters with ones counted by the database: a count, a range scan over the sign-up days and
+        a scan of the email index. Writes committed while the queries run may be counted twice or not at all,
+        until the next reconciliation.
+     */
+    @Scheduled(
+            initialDelayString = "${turtleman.stats.reconcile-interval:PT1H}",
+            fixedDelayString = "${turtleman.stats.reconcile-interval:PT1H}"
+    )
+    public synchronized void reconcile() {
+        long startTime = System.nanoTime();
+        LocalDate firstSignupDate = today().minusDays(signupDays - 1);
+        Counters rebuilt = new Counters(OffsetDateTime.now());
+
+        rebuilt.total.set(customerRepository.count());
+        for (CustomerRepository.SignupCount signupCount : customerRepository.countSignupsPerDaySince(firstSignupDate.atStartOfDay().atOffset(ZoneOffset.UTC))) {
+            rebuilt.signupsPerDay.put(LocalDate.parse(signupCount.getSignupDate()), signupCount.getCustomers());
+        }
+        for (CustomerRepository.DomainCount domainCount : customerRepository.countPerEmailDomain()) {
+            rebuilt.domains.put(domainCount.getDomain(), domainCount.getCustomers());
+        }
+        rebuilt.topDomains = findTopDomains(rebuilt.domains);
+
+        Counters previous = counters;
+        counters = rebuilt;
+        log.info("Reconciled the customer statistics of {} customers ({} off) in {} ms",
+                rebuilt.total.get(),
+                previous == null ? 0 : previous.total.get() - rebuilt.total.get(),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    // also forgets the days that fell out of the window
+    @Scheduled(fixedDelayString = "${turtleman.stats.top-domains-refresh:PT10S}")
+    public void refreshTopDomains() {
+        Counters current = counters;
+        if (current == null) {
+            return;
+        }
+
+        LocalDate firstSignupDate = today().minusDays(signupDays - 1);
+        current.signupsPerDay.keySet().removeIf(day -> day.isBefore(firstSignupDate));
+        current.topDomains = findTopDomains(current.domains);
+    }
+
+    // keeps only the top ones on a heap instead of sorting every domain
+    private Map<String, Long> findTopDomains(Map<String, Long> domains) {
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(TOP_DOMAIN_ORDER.reversed());
+        domains.forEach((domain, count) -> {
+            top.add(Map.entry(domain, count));
+            if (top.size() > topDomains) {
+                top.poll();
+            }
+        });
+
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(top);
+        sorted.sort(TOP_DOMAIN_ORDER);
+        Map<String, Long> topDomainCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : sorted) {
+            topDomainCounts.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(topDomainCounts);
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    private static LocalDate signupDate(OffsetDateTime createdDtime) {
+        return createdDtime.atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // the same as the domain query, the part after the last @
+    private static String emailDomain(String emailNormalized) {
+        return emailNormalized.substring(emailNormalized.lastIndexOf('@') + 1);
+    }
+
+    private static class Counters {
+        final AtomicLong total = new AtomicLong();
+        final ConcurrentHashMap<LocalDate, Long> signupsPerDay = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Long> domains = new ConcurrentHashMap<>();
+        final OffsetDateTime reconciledDtime;
+        volatile Map<String, Long> topDomains = Map.of();
+
+        Counters(OffsetDateTime reconciledDtime) {
+            this.reconciledDtime = reconciledDtime;
+        }
+    }
+}
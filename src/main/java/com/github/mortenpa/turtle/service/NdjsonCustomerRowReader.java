@@ -0,0 +1,48 @@
+package com.github.mortenpa.turtle.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+// one JSON object per line, blank lines are skipped and unknown properties are ignored
+class NdjsonCustomerRowReader implements CustomerRowReader {
+
+    private final BufferedReader reader;
+    private final ObjectReader objectReader;
+    private long rowNumber;
+
+    NdjsonCustomerRowReader(BufferedReader reader, ObjectReader objectReader) {
+        this.reader = reader;
+        this.objectReader = objectReader;
+    }
+
+    @Override
+    public CustomerDTO next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+
+        rowNumber++;
+        try {
+            CustomerDTO customer = objectReader.readValue(line);
+            if (customer == null) {
+                throw new RowFormatException("Row is not a JSON object");
+            }
+            return customer;
+        } catch (JsonProcessingException exception) {
+            throw new RowFormatException("Row is not valid JSON");
+        }
+    }
+
+    @Override
+    public long getRowNumber() {
+        return rowNumber;
+    }
+}
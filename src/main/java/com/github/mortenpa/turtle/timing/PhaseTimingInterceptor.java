@@ -0,0 +1,27 @@
+package com.github.mortenpa.turtle.timing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/*
+    Times calls to the services and repositories as a phase.
+    It is added to the proxies these beans already have, so it doesn't cost an allocation per call of its own.
+ */
+class PhaseTimingInterceptor implements MethodInterceptor {
+
+    private final TimingPhase phase;
+
+    PhaseTimingInterceptor(TimingPhase phase) {
+        this.phase = phase;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        RequestTimings.begin(phase);
+        try {
+            return invocation.proceed();
+        } finally {
+            RequestTimings.end(phase);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.mortenpa.turtle.timing;
+
+import com.github.mortenpa.turtle.service.CustomerBulkService;
+import com.github.mortenpa.turtle.service.CustomerService;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/*
+    Per-request phase timings for the customer API, returned in the Server-Timing header of every response.
+    A sample of the requests is also kept as trace records in memory, see /actuator/requesttraces.
+    With turtleman.timing.query-count-header the number of JDBC statements is returned in X-Query-Count as well.
+
+    The phases are recorded by:
+        validate    TimedValidator for @Valid request bodies, CustomerService for the entities it validates itself
+        service     an advisor on CustomerService and CustomerBulkService
+        db          an interceptor added to the proxy of every Spring Data repository
+        serialize   ServerTimingResponseAdvice and RequestTimingFilter
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "turtleman.timing.enabled", havingValue = "true", matchIfMissing = true)
+public class RequestTimingConfig {
+
+    @Bean
+    public RequestTraceBuffer requestTraceBuffer(@Value("${turtleman.timing.trace-buffer-size:1000}") int capacity) {
+        return new RequestTraceBuffer(capacity);
+    }
+
+    @Bean
+    public RequestTraceEndpoint requestTraceEndpoint(RequestTraceBuffer traceBuffer) {
+        return new RequestTraceEndpoint(traceBuffer);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestTimingFilter> requestTimingFilter(
+            RequestTraceBuffer traceBuffer,
+            @Value("${turtleman.timing.sample-rate:0.01}") double sampleRate,
+            @Value("${turtleman.timing.server-timing-header:true}") boolean serverTimingHeader,
+            @Value("${turtleman.timing.query-count-header:false}") boolean queryCountHeader
+    ) {
+        FilterRegistrationBean<RequestTimingFilter> registration = new FilterRegistrationBean<>(
+                new RequestTimingFilter(traceBuffer, sampleRate, serverTimingHeader, queryCountHeader));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    public WebMvcConfigurer timedValidation(jakarta.validation.Validator validator) {
+        return new WebMvcConfigurer() {
+            @Override
+            public Validator getValidator() {
+                return new TimedValidator(new SpringValidatorAdapter(validator));
+            }
+        };
+    }
+
+    @Bean
+    public Advisor serviceTimingAdvisor() {
+        ComposablePointcut pointcut = new ComposablePointcut(
+                type -> type == CustomerService.class || type == CustomerBulkService.class
+        );
+        return new DefaultPointcutAdvisor(pointcut, new PhaseTimingInterceptor(TimingPhase.SERVICE));
+    }
+
+    // static, it has to be registered before the repository factory beans are created
+    @Bean
+    public static BeanPostProcessor repositoryTimingCustomizer() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(new PhaseTimingInterceptor(TimingPhase.DB))
+                    ));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.mortenpa.turtle.timing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+    Starts and finishes the RequestTimings of every API request.
+    The Server-Timing and X-Query-Count headers are normally set by ServerTimingResponseAdvice before the body
+    is written, responses without a body get them here. Sampled requests are added to the trace buffer when they are done.
+ */
+class RequestTimingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+    // the number of JDBC statements of the request, for statement budgets in tests
+    static final String QUERY_COUNT = "X-Query-Count";
+
+    private final RequestTraceBuffer traceBuffer;
+    private final double sampleRate;
+    private final boolean serverTimingHeader;
+    private final boolean queryCountHeader;
+
+    RequestTimingFilter(RequestTraceBuffer traceBuffer, double sampleRate, boolean serverTimingHeader, boolean queryCountHeader) {
+        this.traceBuffer = traceBuffer;
+        this.sampleRate = sampleRate;
+        this.serverTimingHeader = serverTimingHeader;
+        this.queryCountHeader = queryCountHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.current();
+        timings.start(sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (serverTimingHeader && !response.isCommitted() && !response.containsHeader(SERVER_TIMING)) {
+                response.setHeader(SERVER_TIMING, timings.serverTiming());
+            }
+            if (queryCountHeader && !response.isCommitted() && !response.containsHeader(QUERY_COUNT)) {
+                response.setHeader(QUERY_COUNT, Integer.toString(timings.getStatements()));
+            }
+            if (timings.isSampled()) {
+                traceBuffer.add(timings.toTrace(request.getMethod(), request.getRequestURI(), response.getStatus()));
+            }
+            timings.stop();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.mortenpa.turtle.timing;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Phase timings of the request on the current thread.
+
+    Every thread has one instance that is reset per request, recording a phase only adds to a preallocated array,
+    so timing a request that is not sampled allocates nothing apart from the Server-Timing header.
+    With virtual threads every request runs on a new thread and gets a new instance.
+    Nested calls of the same phase, like a service calling another service, are only counted once.
+    Outside of a request, for example in background jobs, begin and end do nothing.
+ */
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = ThreadLocal.withInitial(RequestTimings::new);
+
+    private final long[] durations = new long[TimingPhase.PHASES.length];
+    private final long[] startedAt = new long[TimingPhase.PHASES.length];
+    private final int[] depth = new int[TimingPhase.PHASES.length];
+
+    private boolean active;
+    private boolean sampled;
+    // JDBC statements executed for the request, counted by the datasource proxy
+    private int statements;
+    private long requestStart;
+    // 0 until the response body is written
+    private long bodyStart;
+
+    private RequestTimings() {}
+
+    public static void begin(TimingPhase phase) {
+        RequestTimings timings = CURRENT.get();
+        int index = phase.ordinal();
+        if (timings.active && timings.depth[index]++ == 0) {
+            timings.startedAt[index] = System.nanoTime();
+        }
+    }
+
+    public static void end(TimingPhase phase) {
+        RequestTimings timings = CURRENT.get();
+        int index = phase.ordinal();
+        if (timings.active && timings.depth[index] > 0 && --timings.depth[index] == 0) {
+            timings.durations[index] += System.nanoTime() - timings.startedAt[index];
+        }
+    }
+
+    public static void countStatement() {
+        RequestTimings timings = CURRENT.get();
+        if (timings.active) {
+            timings.statements++;
+        }
+    }
+
+    static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    void start(boolean sampled) {
+        Arrays.fill(durations, 0);
+        Arrays.fill(depth, 0);
+        this.active = true;
+        this.sampled = sampled;
+        this.requestStart = System.nanoTime();
+        this.bodyStart = 0;
+        this.statements = 0;
+    }
+
+    void stop() {
+        active = false;
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    boolean isSampled() {
+        return sampled;
+    }
+
+    int getStatements() {
+        return statements;
+    }
+
+    void markBodyStart() {
+        if (active && bodyStart == 0) {
+            bodyStart = System.nanoTime();
+        }
+    }
+
+    // like validate;dur=0.052, service;dur=1.830, db;dur=1.214, app;dur=2.105, app being everything up to now
+    String serverTiming() {
+        StringBuilder header = new StringBuilder(96);
+        for (TimingPhase phase : TimingPhase.PHASES) {
+            if (phase != TimingPhase.SERIALIZE && durations[phase.ordinal()] > 0) {
+                appendMetric(header, phase.getMetricName(), durations[phase.ordinal()]);
+            }
+        }
+        appendMetric(header, "app", System.nanoTime() - requestStart);
+        return header.toString();
+    }
+
+    RequestTrace toTrace(String method, String path, int status) {
+        long end = System.nanoTime();
+        Map<String, Double> phases = new LinkedHashMap<>();
+        for (TimingPhase phase : TimingPhase.PHASES) {
+            long duration = phase == TimingPhase.SERIALIZE
+                    ? (bodyStart == 0 ? 0 : end - bodyStart)
+                    : durations[phase.ordinal()];
+            phases.put(phase.getMetricName(), toMillis(duration));
+        }
+        return new RequestTrace(Instant.now(), method, path, status, toMillis(end - requestStart), statements, phases);
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        // milliseconds with three decimals, without going through String.format
+        long micros = nanos / 1000;
+        header.append(name).append(";dur=").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000 / 1000.0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.mortenpa.turtle.timing;
+
+import java.time.Instant;
+import java.util.Map;
+
+// a sampled request with the milliseconds spent in each phase and the number of JDBC statements it executed
+public record RequestTrace(
+        Instant time,
+        String method,
+        String path,
+        int status,
+        double totalMillis,
+        int statements,
+        Map<String, Double> phaseMillis
+) {}
@@ -0,0 +1,34 @@
+package com.github.mortenpa.turtle.timing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// the last sampled requests, older ones are overwritten
+class RequestTraceBuffer {
+
+    private final AtomicReferenceArray<RequestTrace> traces;
+    private final AtomicLong written = new AtomicLong();
+
+    RequestTraceBuffer(int capacity) {
+        this.traces = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(RequestTrace trace) {
+        traces.set((int) (written.getAndIncrement() % traces.length()), trace);
+    }
+
+    // newest first
+    List<RequestTrace> recent() {
+        long end = written.get();
+        List<RequestTrace> recent = new ArrayList<>();
+        for (long i = end - 1; i >= Math.max(0, end - traces.length()); i--) {
+            RequestTrace trace = traces.get((int) (i % traces.length()));
+            if (trace != null) {
+                recent.add(trace);
+            }
+        }
+        return recent;
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.mortenpa.turtle.timing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+// /actuator/requesttraces, the phase timings of the last sampled requests
+@Endpoint(id = "requesttraces")
+class RequestTraceEndpoint {
+
+    private final RequestTraceBuffer traceBuffer;
+
+    RequestTraceEndpoint(RequestTraceBuffer traceBuffer) {
+        this.traceBuffer = traceBuffer;
+    }
+
+    @ReadOperation
+    public List<RequestTrace> traces() {
+        return traceBuffer.recent();
+    }
+}
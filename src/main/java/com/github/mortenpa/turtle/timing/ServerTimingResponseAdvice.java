@@ -0,0 +1,54 @@
+package com.github.mortenpa.turtle.timing;
+
+import com.github.mortenpa.turtle.controller.CustomerController;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+// sets the Server-Timing header right before the body is serialized, the last moment headers can still be set
+// part of RequestTimingConfig, a @ControllerAdvice has to be found by the component scan
+@ControllerAdvice(assignableTypes = CustomerController.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "turtleman.timing.enabled", havingValue = "true", matchIfMissing = true)
+class ServerTimingResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    private final boolean serverTimingHeader;
+    private final boolean queryCountHeader;
+
+    ServerTimingResponseAdvice(
+            @Value("${turtleman.timing.server-timing-header:true}") boolean serverTimingHeader,
+            @Value("${turtleman.timing.query-count-header:false}") boolean queryCountHeader
+    ) {
+        this.serverTimingHeader = serverTimingHeader;
+        this.queryCountHeader = queryCountHeader;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        RequestTimings timings = RequestTimings.current();
+        if (timings.isActive()) {
+            if (serverTimingHeader) {
+                response.getHeaders().set(RequestTimingFilter.SERVER_TIMING, timings.serverTiming());
+            }
+            if (queryCountHeader) {
+                response.getHeaders().set(RequestTimingFilter.QUERY_COUNT, Integer.toString(timings.getStatements()));
+            }
+            timings.markBodyStart();
+        }
+        return body;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.mortenpa.turtle.timing;
+
+import org.springframework.validation.Errors;
+import org.springframework.validation.SmartValidator;
+
+// the validator Spring MVC uses for @Valid request bodies, timed as the validate phase
+class TimedValidator implements SmartValidator {
+
+    private final SmartValidator delegate;
+
+    TimedValidator(SmartValidator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        RequestTimings.begin(TimingPhase.VALIDATE);
+        try {
+            delegate.validate(target, errors);
+        } finally {
+            RequestTimings.end(TimingPhase.VALIDATE);
+        }
+    }
+
+    @Override
+    public void validate(Object target, Errors errors, Object... validationHints) {
+        RequestTimings.begin(TimingPhase.VALIDATE);
+        try {
+            delegate.validate(target, errors, validationHints);
+        } finally {
+            RequestTimings.end(TimingPhase.VALIDATE);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.mortenpa.turtle.timing;
+
+// the phases of a request that are timed, the names are the metric names in the Server-Timing header
+public enum TimingPhase {
+    // request body and entity validation
+    VALIDATE("validate"),
+    // CustomerService and CustomerBulkService, including the database calls they make
+    SERVICE("service"),
+    // repository calls, including the time waiting for a connection
+    DB("db"),
+    // from the start of the response body until the request is done, only in trace records
+    SERIALIZE("serialize");
+
+    static final TimingPhase[] PHASES = values();
+
+    private final String metricName;
+
+    TimingPhase(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
@@ -1,23 +1,58 @@
 package com.github.mortenpa.turtle.integration;
 
 import com.github.mortenpa.turtle.controller.CustomerApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerBulkApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerChangesApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerEmailAvailabilityApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerImportApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerMultiGetApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerPageApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerStatsApiResponse;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkItemResult;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO.Operation;
+import com.github.mortenpa.turtle.data.dto.CustomerChange;
 import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerSortField;
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
+import com.github.mortenpa.turtle.repository.CustomerEventRepository;
+import com.github.mortenpa.turtle.service.CustomerEmailRegistry;
+import com.github.mortenpa.turtle.service.CustomerPageToken;
+import com.github.mortenpa.turtle.service.CustomerStatsService;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +64,18 @@ public class CustomerControllerTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private CustomerEmailRegistry customerEmailRegistry;
+
+    @Autowired
+    private CustomerStatsService customerStatsService;
+
+    @Autowired
+    private CustomerEventRepository customerEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     CustomerDTO[] invalidCustomerDTOs =  new CustomerDTO[] {
             new CustomerDTO(),
             new CustomerDTO("", "Turtle", "man@turtle.sea"),
@@ -115,6 +162,13 @@ public class CustomerControllerTest {
         );
     }
 
+    // the number of JDBC statements the request executed, from X-Query-Count (turtleman.timing.query-count-header)
+    private static void assertQueryBudget(ResponseEntity<?> response, int budget) {
+        String queryCount = response.getHeaders().getFirst("X-Query-Count");
+        assertNotNull(queryCount);
+        assertTrue(Integer.parseInt(queryCount) <= budget, queryCount + " statements, the budget is " + budget);
+    }
+
     // tests start from here on out
 
     @Test
@@ -216,6 +270,401 @@ public class CustomerControllerTest {
         assertNull(body.getCustomer());
     }
 
+    @Test
+    public void getCustomersByIds_WhenSomeAreMissing_ShouldReturnFoundAndMissing() {
+        CustomerEntity firstCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        CustomerEntity secondCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        ResponseEntity<CustomerMultiGetApiResponse> response = restTemplate.getForEntity(
+                API_ENDPOINT + "?ids=" + secondCustomer.getId() + ",-1," + firstCustomer.getId() + "," + secondCustomer.getId(),
+                CustomerMultiGetApiResponse.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CustomerMultiGetApiResponse body = response.getBody();
+        assertNotNull(body);
+        assertTrue(body.isSuccess());
+        // in the order asked for, duplicates once
+        assertEquals(List.of(secondCustomer.getId(), firstCustomer.getId()), body.getCustomers().stream().map(CustomerEntity::getId).toList());
+        assertEquals(List.of(-1L), body.getMissingIds());
+        // both customers are cached since they were added, only the missing id goes to the database
+        assertQueryBudget(response, 1);
+
+        ResponseEntity<CustomerMultiGetApiResponse> postResponse = restTemplate.postForEntity(
+                API_ENDPOINT + "/_mget", List.of(firstCustomer.getId(), -2L), CustomerMultiGetApiResponse.class);
+        assertEquals(HttpStatus.OK, postResponse.getStatusCode());
+        assertEquals(firstCustomer.getEmail(), postResponse.getBody().getCustomers().get(0).getEmail());
+        assertEquals(List.of(-2L), postResponse.getBody().getMissingIds());
+    }
+
+    // without a cursor the feed starts from the beginning
+    private static String changesEndpoint(String cursor, int limit) {
+        return API_ENDPOINT + "/changes?limit=" + limit + (cursor == null ? "" : "&since=" + cursor);
+    }
+
+    @Test
+    public void getChanges_AfterCreateUpdateAndDelete_ShouldReturnLatestStatesAndTombstones() {
+        // catch up with the changes of the other tests first
+        String cursor = null;
+        CustomerChangesApiResponse body;
+        do {
+            body = restTemplate.getForEntity(changesEndpoint(cursor, 1000), CustomerChangesApiResponse.class).getBody();
+            assertNotNull(body);
+            cursor = body.getNextCursor();
+        } while (body.isHasMore());
+
+        CustomerEntity updatedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        CustomerEntity deletedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        checkResponse(putRequest(updatedCustomer.getId(), new CustomerDTO("Changed", "Turtle", updatedCustomer.getEmail())), null, HttpStatus.OK, true);
+        checkResponse(deleteRequest(deletedCustomer.getId()), null, HttpStatus.OK, true);
+
+        ResponseEntity<CustomerChangesApiResponse> response = restTemplate.getForEntity(changesEndpoint(cursor, 100), CustomerChangesApiResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        body = response.getBody();
+        assertNotNull(body);
+        assertTrue(body.isSuccess());
+        assertFalse(body.isHasMore());
+        // both index range scans, however many customers there are
+        assertQueryBudget(response, 2);
+
+        // the updated customer once in its latest state, then the tombstone of the deleted one
+        List<CustomerChange> changes = body.getChanges();
+        assertEquals(List.of(updatedCustomer.getId(), deletedCustomer.getId()), changes.stream().map(CustomerChange::getId).toList());
+        assertFalse(changes.get(0).isDeleted());
+        assertEquals("Changed", changes.get(0).getCustomer().getFirstName());
+        assertTrue(changes.get(1).isDeleted());
+        assertNull(changes.get(1).getCustomer());
+
+        // nothing new, the cursor still moves up to the settle time
+        body = restTemplate.getForEntity(changesEndpoint(body.getNextCursor(), 100), CustomerChangesApiResponse.class).getBody();
+        assertNotNull(body);
+        assertTrue(body.getChanges().isEmpty());
+        assertNotNull(body.getNextCursor());
+    }
+
+    @Test
+    public void getChanges_WhenNothingChanges_ShouldAdvanceCursor() {
+        String cursor = null;
+        CustomerChangesApiResponse body;
+        do {
+            body = restTemplate.getForEntity(changesEndpoint(cursor, 1000), CustomerChangesApiResponse.class).getBody();
+            assertNotNull(body);
+            cursor = body.getNextCursor();
+        } while (body.isHasMore());
+
+        // an idle consumer keeps moving along with the settle time (none in tests), so it never falls behind the retention
+        OffsetDateTime beforePoll = OffsetDateTime.now();
+        body = restTemplate.getForEntity(changesEndpoint(cursor, 100), CustomerChangesApiResponse.class).getBody();
+        assertNotNull(body);
+        assertTrue(body.getChanges().isEmpty());
+        assertFalse(body.isHasMore());
+        CustomerPageToken token = CustomerPageToken.decode(body.getNextCursor(), CustomerSortField.MODIFIED_DATETIME);
+        assertFalse(token.getDatetime().isBefore(beforePoll));
+
+        // and still sees the changes made after it moved
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        body = restTemplate.getForEntity(changesEndpoint(body.getNextCursor(), 100), CustomerChangesApiResponse.class).getBody();
+        assertNotNull(body);
+        assertEquals(List.of(customer.getId()), body.getChanges().stream().map(CustomerChange::getId).toList());
+    }
+
+    @Test
+    public void getChanges_WhenCursorIsOlderThanTombstoneRetention_ShouldBeGone() {
+        String expiredCursor = CustomerPageToken.encode(CustomerSortField.MODIFIED_DATETIME, OffsetDateTime.now().minusDays(30), 1);
+        ResponseEntity<CustomerApiResponse> response = restTemplate.getForEntity(
+                API_ENDPOINT + "/changes?since=" + expiredCursor, CustomerApiResponse.class);
+        checkResponse(response, null, HttpStatus.GONE, false);
+
+        response = restTemplate.getForEntity(API_ENDPOINT + "/changes?since=not-a-cursor", CustomerApiResponse.class);
+        checkResponse(response, null, HttpStatus.BAD_REQUEST, false);
+    }
+
+    private CustomerStatsApiResponse getStats() {
+        ResponseEntity<CustomerStatsApiResponse> response = restTemplate.getForEntity(API_ENDPOINT + "/stats", CustomerStatsApiResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertQueryBudget(response, 0);
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().isSuccess());
+        return response.getBody();
+    }
+
+    @Test
+    public void getStats_AfterCreatesAndDelete_ShouldCountWithoutQueriesAndMatchReconciliation() {
+        // counts the writes of the other tests as well, and waits for the build on startup if it is still running
+        customerStatsService.reconcile();
+        CustomerStatsApiResponse before = getStats();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+        String domain = UUID.randomUUID().toString().substring(0, 8) + ".turtle.sea";
+        CustomerEntity firstCustomer = addAndCheckCustomer(new CustomerEntity("Man", "Turtle", "first@" + domain));
+        CustomerEntity secondCustomer = addAndCheckCustomer(new CustomerEntity("Man", "Turtle", "second@" + domain));
+        CustomerStatsApiResponse afterCreates = getStats();
+        assertEquals(before.getTotalCustomers() + 2, afterCreates.getTotalCustomers());
+        assertEquals(before.getSignupsPerDay().get(today) + 2, afterCreates.getSignupsPerDay().get(today));
+
+        restTemplate.delete(apiEndPointWithId(firstCustomer.getId()));
+        CustomerStatsApiResponse afterDelete = getStats();
+        assertEquals(before.getTotalCustomers() + 1, afterDelete.getTotalCustomers());
+        assertEquals(before.getSignupsPerDay().get(today) + 1, afterDelete.getSignupsPerDay().get(today));
+
+        bulkRequest(new CustomerBulkOperationDTO(Operation.DELETE, secondCustomer.getId(), null));
+        CustomerStatsApiResponse afterBulkDelete = getStats();
+        assertEquals(before.getTotalCustomers(), afterBulkDelete.getTotalCustomers());
+        assertEquals(before.getSignupsPerDay().get(today), afterBulkDelete.getSignupsPerDay().get(today));
+
+        // the database agrees with the counters
+        customerStatsService.reconcile();
+        CustomerStatsApiResponse reconciled = getStats();
+        assertEquals(afterBulkDelete.getTotalCustomers(), reconciled.getTotalCustomers());
+        assertEquals(afterBulkDelete.getSignupsPerDay(), reconciled.getSignupsPerDay());
+        assertTrue(reconciled.getReconciledDtime().isAfter(before.getReconciledDtime()));
+
+        List<Long> domainCounts = new ArrayList<>(reconciled.getTopEmailDomains().values());
+        assertFalse(domainCounts.isEmpty());
+        for (int i = 1; i < domainCounts.size(); i++) {
+            assertTrue(domainCounts.get(i - 1) >= domainCounts.get(i));
+        }
+    }
+
+    private CompletableFuture<HttpResponse<Stream<String>>> openEventStream(HttpClient client, String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(restTemplate.getRootUri() + API_ENDPOINT + "/events"))
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines());
+    }
+
+    // the lines of the stream up to the data line that contains the text
+    private static List<String> readEventsUntil(CompletableFuture<HttpResponse<Stream<String>>> stream, String text) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> lines = new ArrayList<>();
+            for (String line : (Iterable<String>) stream.join().body()::iterator) {
+                lines.add(line);
+                if (line.startsWith("data:") && line.contains(text)) {
+                    break;
+                }
+            }
+            return lines;
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static String lastValue(List<String> lines, String field) {
+        String value = null;
+        for (String line : lines) {
+            if (line.startsWith(field + ":")) {
+                value = line.substring(field.length() + 1).trim();
+            }
+        }
+        return value;
+    }
+
+    @Test
+    public void streamEvents_ShouldPushWritesAndResumeFromLastEventId() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = openEventStream(client, null);
+        // the headers come once the subscription is registered, events written before it are not pushed to it
+        assertEquals(HttpStatus.OK.value(), stream.get(10, TimeUnit.SECONDS).statusCode());
+
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        List<String> lines = readEventsUntil(stream, customer.getEmail());
+        assertEquals("created", lastValue(lines, "event"));
+        String createdEventId = lastValue(lines, "id");
+        assertNotNull(createdEventId);
+        stream.join().body().close();
+
+        // missed while disconnected, replayed from the outbox after the last event the client got
+        checkResponse(putRequest(customer.getId(), new CustomerDTO("Resumed", "Turtle", customer.getEmail())), null, HttpStatus.OK, true);
+        stream = openEventStream(client, createdEventId);
+        lines = readEventsUntil(stream, "Resumed");
+        assertEquals("updated", lastValue(lines, "event"));
+        assertTrue(Long.parseLong(lastValue(lines, "id")) > Long.parseLong(createdEventId));
+        stream.join().body().close();
+    }
+
+    @Test
+    public void streamEvents_WhenLowerEventIdCommitsAfterGapTimeout_ShouldStillPushIt() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = openEventStream(client, null);
+        assertEquals(HttpStatus.OK.value(), stream.get(10, TimeUnit.SECONDS).statusCode());
+
+        // takes an event id and holds its transaction open
+        String marker = UUID.randomUUID().toString();
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Long> lateEventId = CompletableFuture.supplyAsync(() -> new TransactionTemplate(transactionManager).execute(status -> {
+            CustomerEventEntity event = customerEventRepository.saveAndFlush(
+                    new CustomerEventEntity(0, CustomerEventEntity.Type.CREATED, "{\"marker\":\"" + marker + "\"}"));
+            inserted.countDown();
+            try {
+                commit.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return event.getEventId();
+        }));
+        assertTrue(inserted.await(10, TimeUnit.SECONDS));
+
+        // a higher id is only pushed once the dispatcher gave up waiting for the open one
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        List<String> lines = readEventsUntil(stream, customer.getEmail());
+        long customerEventId = Long.parseLong(lastValue(lines, "id"));
+
+        commit.countDown();
+        long lowerEventId = lateEventId.get(10, TimeUnit.SECONDS);
+        assertTrue(lowerEventId < customerEventId);
+        lines = readEventsUntil(stream, marker);
+        assertEquals(String.valueOf(lowerEventId), lastValue(lines, "id"));
+        stream.join().body().close();
+    }
+
+    @Test
+    public void getCustomerByEmail_WhenEmailDiffersInCase_ShouldReturnCustomer() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        ResponseEntity<CustomerApiResponse> response = restTemplate.getForEntity(
+                API_ENDPOINT + "/by-email/" + addedCustomer.getEmail().toUpperCase(), CustomerApiResponse.class);
+        checkResponse(response, addedCustomer, HttpStatus.OK, true);
+        assertEquals(addedCustomer.getId(), response.getBody().getCustomer().getId());
+
+        response = restTemplate.getForEntity(API_ENDPOINT + "/by-email/nobody@turtle.sea", CustomerApiResponse.class);
+        checkResponse(response, null, HttpStatus.NOT_FOUND, false);
+    }
+
+    @Test
+    public void addCustomer_WhenEmailDiffersOnlyInCase_ShouldFail() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        CustomerDTO sameEmail = new CustomerDTO("Other", "Turtle", addedCustomer.getEmail().toUpperCase());
+        ResponseEntity<CustomerApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT, sameEmail, CustomerApiResponse.class);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertFalse(response.getBody().isSuccess());
+    }
+
+    @Test
+    public void checkEmailAvailability_WhenSomeEmailsAreTaken_ShouldReportEachEmail() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        String takenEmail = addedCustomer.getEmail().toUpperCase();
+        String freeEmail = UUID.randomUUID() + "@turtle.sea";
+
+        ResponseEntity<CustomerEmailAvailabilityApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT + "/email-availability", List.of(takenEmail, freeEmail), CustomerEmailAvailabilityApiResponse.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CustomerEmailAvailabilityApiResponse body = response.getBody();
+        assertNotNull(body);
+        assertTrue(body.isSuccess());
+        assertEquals(false, body.getAvailability().get(takenEmail));
+        assertEquals(true, body.getAvailability().get(freeEmail));
+    }
+
+    @Test
+    public void searchCustomers_WhenQueryIsNamePrefix_ShouldFindCustomer() {
+        // a last name no other test uses, so that the customer can't be pushed out of the results
+        String lastName = "Tortuga" + UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+        CustomerEntity addedCustomer = addAndCheckCustomer(new CustomerEntity("Man", lastName, UUID.randomUUID() + "@turtle.sea"));
+
+        ResponseEntity<CustomerPageApiResponse> response = restTemplate.getForEntity(
+                API_ENDPOINT + "/search?q=" + lastName.substring(0, 12).toUpperCase() + "&limit=5", CustomerPageApiResponse.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CustomerPageApiResponse body = response.getBody();
+        assertNotNull(body);
+        assertTrue(body.isSuccess());
+        assertTrue(body.getCustomers().stream().anyMatch(customer -> customer.getId() == addedCustomer.getId()));
+
+        ResponseEntity<CustomerPageApiResponse> blankResponse = restTemplate.getForEntity(
+                API_ENDPOINT + "/search?q= ", CustomerPageApiResponse.class);
+        assertEquals(HttpStatus.BAD_REQUEST, blankResponse.getStatusCode());
+    }
+
+    @Test
+    public void getCustomer_WhenETagMatches_ShouldReturnNotModified() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        ResponseEntity<CustomerApiResponse> response = getRequest(addedCustomer.getId());
+        checkResponse(response, addedCustomer, HttpStatus.OK, true);
+        String eTag = response.getHeaders().getETag();
+        assertNotNull(eTag);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<CustomerApiResponse> notModifiedResponse = restTemplate.exchange(
+                apiEndPointWithId(addedCustomer.getId()), HttpMethod.GET, new HttpEntity<>(headers), CustomerApiResponse.class);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, notModifiedResponse.getStatusCode());
+        assertEquals(eTag, notModifiedResponse.getHeaders().getETag());
+        assertNull(notModifiedResponse.getBody());
+
+        // after a change the old ETag no longer matches
+        putRequest(addedCustomer.getId(), new CustomerDTO("Changed", "Turtle", addedCustomer.getEmail()));
+        ResponseEntity<CustomerApiResponse> changedResponse = restTemplate.exchange(
+                apiEndPointWithId(addedCustomer.getId()), HttpMethod.GET, new HttpEntity<>(headers), CustomerApiResponse.class);
+        assertEquals(HttpStatus.OK, changedResponse.getStatusCode());
+        assertNotEquals(eTag, changedResponse.getHeaders().getETag());
+    }
+
+    @Test
+    public void modifyCustomer_WhenIfMatchIsStale_ShouldFailWithPreconditionFailed() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        String eTag = getRequest(addedCustomer.getId()).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(eTag);
+        CustomerDTO firstUpdate = new CustomerDTO("First", "Turtle", addedCustomer.getEmail());
+        ResponseEntity<CustomerApiResponse> response = restTemplate.exchange(
+                apiEndPointWithId(addedCustomer.getId()), HttpMethod.PUT, new HttpEntity<>(firstUpdate, headers), CustomerApiResponse.class);
+        checkResponse(response, new CustomerEntity("First", "Turtle", addedCustomer.getEmail()), HttpStatus.OK, true);
+
+        // the second client still holds the original ETag, its update must not overwrite the first one
+        CustomerDTO lostUpdate = new CustomerDTO("Second", "Turtle", addedCustomer.getEmail());
+        response = restTemplate.exchange(
+                apiEndPointWithId(addedCustomer.getId()), HttpMethod.PUT, new HttpEntity<>(lostUpdate, headers), CustomerApiResponse.class);
+        checkResponse(response, null, HttpStatus.PRECONDITION_FAILED, false);
+
+        assertEquals("First", getRequest(addedCustomer.getId()).getBody().getCustomer().getFirstName());
+    }
+
+    @Test
+    public void modifyCustomer_ShouldReturnServerTimingPhases() {
+        CustomerEntity addedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        ResponseEntity<CustomerApiResponse> response = putRequest(addedCustomer.getId(), new CustomerDTO("Timed", "Turtle", addedCustomer.getEmail()));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        String serverTiming = response.getHeaders().getFirst("Server-Timing");
+        assertNotNull(serverTiming);
+        for (String phase : List.of("validate;dur=", "service;dur=", "db;dur=", "app;dur=")) {
+            assertTrue(serverTiming.contains(phase), serverTiming + " is missing " + phase);
+        }
+    }
+
+    @Test
+    public void customerEndpoints_ShouldStayWithinQueryBudgets() {
+        // the email filter is built in the background, until then every sign-up also checks the email in the database
+        customerEmailRegistry.rebuild();
+
+        CustomerEntity customer = createCustomerWithRandomEmail();
+        ResponseEntity<CustomerApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT, createCustomerDTOFromCustomer(customer), CustomerApiResponse.class);
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        // the insert and its event, and a read of each id sequence for every 50th customer or event
+        assertQueryBudget(response, 4);
+        long customerId = response.getBody().getCustomer().getId();
+
+        // cached by the insert
+        assertQueryBudget(getRequest(customerId), 0);
+        assertQueryBudget(getRequest(-1), 1);
+        assertQueryBudget(restTemplate.getForEntity(API_ENDPOINT + "/by-email/" + customer.getEmail(), CustomerApiResponse.class), 1);
+        assertQueryBudget(restTemplate.getForEntity(API_ENDPOINT + "?limit=10", CustomerPageApiResponse.class), 1);
+        assertQueryBudget(restTemplate.getForEntity(API_ENDPOINT + "/search?q=Turtle&limit=10", CustomerPageApiResponse.class), 1);
+        assertQueryBudget(putRequest(customerId, new CustomerDTO("Budget", "Turtle", customer.getEmail())), 3);
+        // the delete, its tombstone and its event
+        assertQueryBudget(deleteRequest(customerId), 4);
+    }
+
     @Test
     public void deleteCustomer_WhenCustomerIsValid_ShouldDeleteCustomer() {
         CustomerEntity customer = createCustomerWithRandomEmail();
@@ -295,4 +744,244 @@ public class CustomerControllerTest {
         checkResponse(getResponse, addedCustomers.get(2), HttpStatus.OK, true);
     }
 
+    private void bulkRequest(CustomerBulkOperationDTO operation) {
+        ResponseEntity<CustomerBulkApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT + "/_bulk", List.of(operation), CustomerBulkApiResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().isSuccess());
+    }
+
+    @Test
+    public void getCustomer_AfterPutAndBulkUpdate_ShouldNotReturnTheCachedCustomer() {
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        // the first read caches the customer
+        checkResponse(getRequest(customer.getId()), customer, HttpStatus.OK, true);
+
+        CustomerEntity modifiedCustomer = new CustomerEntity("Modified", "Turtle", customer.getEmail());
+        checkResponse(putRequest(customer.getId(), createCustomerDTOFromCustomer(modifiedCustomer)), modifiedCustomer, HttpStatus.OK, true);
+        checkResponse(getRequest(customer.getId()), modifiedCustomer, HttpStatus.OK, true);
+
+        CustomerEntity bulkModifiedCustomer = new CustomerEntity("Bulk", "Modified", customer.getEmail());
+        bulkRequest(new CustomerBulkOperationDTO(Operation.UPDATE, customer.getId(), createCustomerDTOFromCustomer(bulkModifiedCustomer)));
+        checkResponse(getRequest(customer.getId()), bulkModifiedCustomer, HttpStatus.OK, true);
+    }
+
+    @Test
+    public void getCustomer_AfterDeleteAndBulkDelete_ShouldNotReturnTheCachedCustomer() {
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        checkResponse(getRequest(customer.getId()), customer, HttpStatus.OK, true);
+
+        restTemplate.delete(apiEndPointWithId(customer.getId()));
+        checkResponse(getRequest(customer.getId()), null, HttpStatus.NOT_FOUND, false);
+
+        CustomerEntity bulkDeletedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        checkResponse(getRequest(bulkDeletedCustomer.getId()), bulkDeletedCustomer, HttpStatus.OK, true);
+
+        bulkRequest(new CustomerBulkOperationDTO(Operation.DELETE, bulkDeletedCustomer.getId(), null));
+        checkResponse(getRequest(bulkDeletedCustomer.getId()), null, HttpStatus.NOT_FOUND, false);
+    }
+
+    @Test
+    public void bulkCustomers_WhenSomeOperationsFail_ShouldReportEachOperation() {
+        CustomerEntity existingCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        CustomerEntity deletedCustomer = addAndCheckCustomer(createCustomerWithRandomEmail());
+        CustomerEntity newCustomer = createCustomerWithRandomEmail();
+
+        List<CustomerBulkOperationDTO> operations = List.of(
+                new CustomerBulkOperationDTO(Operation.CREATE, null, createCustomerDTOFromCustomer(newCustomer)),
+                // same email as the existing customer
+                new CustomerBulkOperationDTO(Operation.CREATE, null, createCustomerDTOFromCustomer(existingCustomer)),
+                new CustomerBulkOperationDTO(Operation.CREATE, null, new CustomerDTO("Man", "Turtle", "this.email.is.wrong")),
+                new CustomerBulkOperationDTO(Operation.UPDATE, existingCustomer.getId(), new CustomerDTO("bulk", "updated", existingCustomer.getEmail())),
+                new CustomerBulkOperationDTO(Operation.UPDATE, -1L, new CustomerDTO("Man", "Turtle", "missing@turtle.sea")),
+                new CustomerBulkOperationDTO(Operation.DELETE, deletedCustomer.getId(), null)
+        );
+
+        ResponseEntity<CustomerBulkApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT + "/_bulk", operations, CustomerBulkApiResponse.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CustomerBulkApiResponse body = response.getBody();
+        assertNotNull(body);
+        assertFalse(body.isSuccess());
+
+        List<CustomerBulkItemResult> results = body.getResults();
+        assertEquals(operations.size(), results.size());
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertEquals(newCustomer.getEmail(), results.get(0).getCustomer().getEmail());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(2).getStatus());
+        assertEquals(HttpStatus.OK.value(), results.get(3).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND.value(), results.get(4).getStatus());
+        assertEquals(HttpStatus.OK.value(), results.get(5).getStatus());
+
+        // the failures must not have rolled back the successful operations
+        checkResponse(getRequest(results.get(0).getId()), newCustomer, HttpStatus.OK, true);
+        CustomerEntity expectedCustomer = new CustomerEntity("bulk", "updated", existingCustomer.getEmail());
+        checkResponse(getRequest(existingCustomer.getId()), expectedCustomer, HttpStatus.OK, true);
+        checkResponse(getRequest(deletedCustomer.getId()), null, HttpStatus.NOT_FOUND, false);
+    }
+
+    @Test
+    public void getCustomers_WhenPagingThroughAllCustomers_ShouldReturnEveryCustomerOnce() {
+        Set<Long> addedIds = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            addedIds.add(addAndCheckCustomer(createCustomerWithRandomEmail()).getId());
+        }
+
+        for (String sort : new String[] {"id", "created_datetime", "modified_datetime"}) {
+            Set<Long> seenIds = new HashSet<>();
+            String pageToken = null;
+
+            do {
+                String url = API_ENDPOINT + "?limit=2&sort=" + sort + (pageToken == null ? "" : "&pageToken=" + pageToken);
+                ResponseEntity<CustomerPageApiResponse> response = restTemplate.getForEntity(url, CustomerPageApiResponse.class);
+                assertEquals(HttpStatus.OK, response.getStatusCode());
+
+                CustomerPageApiResponse body = response.getBody();
+                assertNotNull(body);
+                assertTrue(body.isSuccess());
+                assertTrue(body.getCustomers().size() <= 2);
+
+                for (CustomerEntity customer : body.getCustomers()) {
+                    // a customer showing up twice would mean that the pages overlap
+                    assertTrue(seenIds.add(customer.getId()));
+                }
+                pageToken = body.getNextPageToken();
+            } while (pageToken != null);
+
+            assertTrue(seenIds.containsAll(addedIds));
+        }
+    }
+
+    @Test
+    public void getCustomers_WhenPageRequestIsInvalid_ShouldFail() {
+        String[] invalidUrls = {
+                API_ENDPOINT + "?limit=0",
+                API_ENDPOINT + "?limit=100000",
+                API_ENDPOINT + "?sort=email",
+                API_ENDPOINT + "?pageToken=not-a-token",
+        };
+
+        for (String url : invalidUrls) {
+            ResponseEntity<CustomerPageApiResponse> response = restTemplate.getForEntity(url, CustomerPageApiResponse.class);
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+            assertNotNull(response.getBody());
+            assertFalse(response.getBody().isSuccess());
+        }
+    }
+
+    @Test
+    public void exportCustomers_WhenFormatIsValid_ShouldStreamEveryCustomer() {
+        CustomerEntity customer = addAndCheckCustomer(createCustomerWithRandomEmail());
+
+        ResponseEntity<String> ndjsonResponse = restTemplate.getForEntity(API_ENDPOINT + "/export?format=ndjson", String.class);
+        assertEquals(HttpStatus.OK, ndjsonResponse.getStatusCode());
+        assertNotNull(ndjsonResponse.getBody());
+        String[] ndjsonLines = ndjsonResponse.getBody().split("\n");
+        assertTrue(ndjsonLines.length > 0);
+        assertTrue(Arrays.stream(ndjsonLines).anyMatch(line -> line.startsWith("{") && line.contains(customer.getEmail())));
+
+        ResponseEntity<String> csvResponse = restTemplate.getForEntity(API_ENDPOINT + "/export?format=csv", String.class);
+        assertEquals(HttpStatus.OK, csvResponse.getStatusCode());
+        assertNotNull(csvResponse.getBody());
+        String[] csvLines = csvResponse.getBody().split("\n");
+        // one header line on top of the customers
+        assertEquals(ndjsonLines.length + 1, csvLines.length);
+        assertTrue(csvLines[0].startsWith("id,first_name,last_name,email"));
+        assertTrue(Arrays.stream(csvLines).anyMatch(line -> line.startsWith(customer.getId() + ",")));
+
+        ResponseEntity<String> invalidResponse = restTemplate.getForEntity(API_ENDPOINT + "/export?format=xml", String.class);
+        assertEquals(HttpStatus.BAD_REQUEST, invalidResponse.getStatusCode());
+    }
+
+    private ResponseEntity<CustomerImportApiResponse> importRequest(String format, String importId, String body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        return restTemplate.postForEntity(
+                API_ENDPOINT + "/import?format=" + format + "&importId=" + importId,
+                new HttpEntity<>(body, headers),
+                CustomerImportApiResponse.class
+        );
+    }
+
+    @Test
+    public void importCustomers_WhenFileHasInvalidRows_ShouldImportTheRest() {
+        CustomerEntity first = createCustomerWithRandomEmail();
+        CustomerEntity second = createCustomerWithRandomEmail();
+        String importId = UUID.randomUUID().toString();
+
+        String csv = "first_name,last_name,email\n" +
+                first.getFirstName() + "," + first.getLastName() + "," + first.getEmail() + "\n" +
+                "Man,Turtle,this.email.is.wrong\n" +
+                "\"Turtle, Jr.\"," + second.getLastName() + "," + second.getEmail() + "\n";
+
+        ResponseEntity<CustomerImportApiResponse> response = importRequest("csv", importId, csv);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CustomerImportApiResponse body = response.getBody();
+        assertNotNull(body);
+        assertFalse(body.isSuccess());
+        assertEquals(3, body.getProgress().getCommittedRows());
+        assertEquals(2, body.getProgress().getAcceptedRows());
+        assertEquals(1, body.getProgress().getRejectedRows());
+        assertEquals(1, body.getRejects().size());
+        assertEquals(2, body.getRejects().get(0).getRow());
+
+        // posting a completed import again must not import anything twice
+        response = importRequest("csv", importId, csv);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(2, response.getBody().getProgress().getAcceptedRows());
+
+        ResponseEntity<CustomerImportApiResponse> progressResponse = restTemplate.getForEntity(
+                API_ENDPOINT + "/import/" + importId, CustomerImportApiResponse.class);
+        assertEquals(HttpStatus.OK, progressResponse.getStatusCode());
+        assertNotNull(progressResponse.getBody());
+        assertEquals(3, progressResponse.getBody().getProgress().getCommittedRows());
+    }
+
+    @Test
+    public void importCustomers_WhenChunkIsReplayed_ShouldCountEveryRowOnce() {
+        CustomerEntity first = createCustomerWithRandomEmail();
+        CustomerEntity second = createCustomerWithRandomEmail();
+        String importId = UUID.randomUUID().toString();
+
+        // the repeated email fails the chunk's transaction, the rows are then committed one by one with the progress
+        String csv = "first_name,last_name,email\n" +
+                "Man,Turtle," + first.getEmail() + "\n" +
+                "Man,Turtle," + second.getEmail() + "\n" +
+                "Man,Turtle," + first.getEmail() + "\n" +
+                "Man,Turtle,this.email.is.wrong\n";
+
+        ResponseEntity<CustomerImportApiResponse> response = importRequest("csv", importId, csv);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(4, response.getBody().getProgress().getCommittedRows());
+        assertEquals(2, response.getBody().getProgress().getAcceptedRows());
+        assertEquals(2, response.getBody().getProgress().getRejectedRows());
+        assertEquals(List.of(3L, 4L), response.getBody().getRejects().stream().map(reject -> reject.getRow()).toList());
+
+        ResponseEntity<CustomerImportApiResponse> progressResponse = restTemplate.getForEntity(
+                API_ENDPOINT + "/import/" + importId, CustomerImportApiResponse.class);
+        assertNotNull(progressResponse.getBody());
+        assertEquals(4, progressResponse.getBody().getProgress().getCommittedRows());
+        assertEquals(2, progressResponse.getBody().getProgress().getAcceptedRows());
+        assertEquals(2, progressResponse.getBody().getProgress().getRejectedRows());
+    }
+
+    @Test
+    public void importCustomers_WhenNdjson_ShouldImportCustomers() {
+        CustomerEntity customer = createCustomerWithRandomEmail();
+        String ndjson = "{\"firstName\":\"" + customer.getFirstName() + "\",\"lastName\":\"" + customer.getLastName() +
+                "\",\"email\":\"" + customer.getEmail() + "\"}\n" +
+                "this is not json\n";
+
+        ResponseEntity<CustomerImportApiResponse> response = importRequest("ndjson", UUID.randomUUID().toString(), ndjson);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(1, response.getBody().getProgress().getAcceptedRows());
+        assertEquals(1, response.getBody().getProgress().getRejectedRows());
+    }
+
 }
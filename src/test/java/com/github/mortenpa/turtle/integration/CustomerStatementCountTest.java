@@ -0,0 +1,215 @@
+package com.github.mortenpa.turtle.integration;
+
+import com.github.mortenpa.turtle.controller.CustomerApiResponse;
+import com.github.mortenpa.turtle.controller.CustomerBulkApiResponse;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerBulkOperationDTO.Operation;
+import com.github.mortenpa.turtle.data.dto.CustomerDTO;
+import com.github.mortenpa.turtle.data.dto.CustomerFileFormat;
+import com.github.mortenpa.turtle.data.dto.CustomerImportResult;
+import com.github.mortenpa.turtle.service.CustomerEmailRegistry;
+import com.github.mortenpa.turtle.service.CustomerImportService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Every single customer endpoint is expected to cost exactly one SQL statement, plus the insert of its event
+    into the outbox for writes (CustomerEventOutbox). The cache is turned off so that reads actually reach the
+    database. Inserts also read the id sequences once for every 50 customers or events, see CustomerEntity.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.jpa.properties.hibernate.generate_statistics=true",
+                "spring.cache.type=none"
+        }
+)
+public class CustomerStatementCountTest {
+    public static final String API_ENDPOINT = "/api/customers";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CustomerEmailRegistry customerEmailRegistry;
+
+    @Autowired
+    private CustomerImportService customerImportService;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        // the email filter is built in the background, until then every sign-up also checks the email in the database
+        customerEmailRegistry.rebuild();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private CustomerDTO createCustomerDTOWithRandomEmail() {
+        String randomEmail = UUID.randomUUID().toString().substring(0, 8) + "@turtle.sea";
+        return new CustomerDTO("Man", "Turtle", randomEmail);
+    }
+
+    private <T> T assertStatementCount(long expectedStatements, Supplier<T> request) {
+        statistics.clear();
+        T result = request.get();
+        assertEquals(expectedStatements, statistics.getPrepareStatementCount());
+        return result;
+    }
+
+    // writes also insert an event, whose id may come from a new read of the event id sequence
+    private <T> T assertWriteStatementCount(long expectedStatements, Supplier<T> request) {
+        statistics.clear();
+        T result = request.get();
+        long sequenceReads = statistics.getPrepareStatementCount() - expectedStatements;
+        assertTrue(sequenceReads == 0 || sequenceReads == 1, statistics.getPrepareStatementCount() + " statements");
+        return result;
+    }
+
+    private long addCustomer() {
+        ResponseEntity<CustomerApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT, createCustomerDTOWithRandomEmail(), CustomerApiResponse.class);
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody().getCustomer().getId();
+    }
+
+    private ResponseEntity<CustomerApiResponse> exchange(String url, HttpMethod method, Object body) {
+        return restTemplate.exchange(url, method, body == null ? null : new HttpEntity<>(body), CustomerApiResponse.class);
+    }
+
+    @Test
+    public void addCustomer_ShouldIssueOneStatementPlusEvent() {
+        statistics.clear();
+        addCustomer();
+        // the customer id and the event id sequences
+        long sequenceReads = statistics.getPrepareStatementCount() - 2;
+        assertTrue(sequenceReads >= 0 && sequenceReads <= 2, sequenceReads + 2 + " statements");
+    }
+
+    @Test
+    public void addCustomers_ShouldReadTheIdSequenceOncePerFiftyCustomers() {
+        statistics.clear();
+        for (int i = 0; i < 100; i++) {
+            addCustomer();
+        }
+        assertTrue(statistics.getPrepareStatementCount() <= 2 * 100 + 2 * 3, statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    public void bulkCreate_ShouldBatchInserts() {
+        List<CustomerBulkOperationDTO> operations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            operations.add(new CustomerBulkOperationDTO(Operation.CREATE, null, createCustomerDTOWithRandomEmail()));
+        }
+
+        statistics.clear();
+        ResponseEntity<CustomerBulkApiResponse> response = restTemplate.postForEntity(
+                API_ENDPOINT + "/_bulk", operations, CustomerBulkApiResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().getResults().stream().allMatch(result -> result.isSuccess()));
+
+        // an insert statement per JDBC batch of 50 customers or events and the id sequence reads, not one statement per customer
+        assertTrue(statistics.getPrepareStatementCount() <= 2 * 6, statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    public void importCustomers_WithRequestEntityManager_ShouldNotKeepImportedCustomersManaged() throws IOException {
+        // binds an EntityManager to the thread like open session in view does, every transaction of the import joins it
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            // four chunks and a bit at the default chunk size of 500
+            int rows = 2001;
+            StringBuilder csv = new StringBuilder("first_name,last_name,email\n");
+            for (int i = 0; i < rows; i++) {
+                csv.append("Man,Turtle,").append(createCustomerDTOWithRandomEmail().getEmail()).append('\n');
+            }
+
+            CustomerImportResult result = customerImportService.importCustomers(UUID.randomUUID().toString(), CustomerFileFormat.CSV,
+                    new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+            assertEquals(rows, result.getProgress().getAcceptedRows());
+
+            // at most the import progress, none of the customers or their events
+            int managedEntities = entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+            assertTrue(managedEntities <= 1, managedEntities + " managed entities");
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+    }
+
+    @Test
+    public void getCustomer_ShouldIssueOneStatement() {
+        long customerId = addCustomer();
+
+        ResponseEntity<CustomerApiResponse> response = assertStatementCount(1,
+                () -> exchange(API_ENDPOINT + "/" + customerId, HttpMethod.GET, null));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        response = assertStatementCount(1, () -> exchange(API_ENDPOINT + "/-1", HttpMethod.GET, null));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void updateCustomer_ShouldIssueOneStatementPlusEvent() {
+        long customerId = addCustomer();
+
+        ResponseEntity<CustomerApiResponse> response = assertWriteStatementCount(2,
+                () -> exchange(API_ENDPOINT + "/" + customerId, HttpMethod.PUT, createCustomerDTOWithRandomEmail()));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        // the datetimes come back from the update statement itself
+        assertNotNull(response.getBody().getCustomer().getCreatedDtime());
+        assertNotNull(response.getBody().getCustomer().getModifiedDtime());
+
+        response = assertStatementCount(1,
+                () -> exchange(API_ENDPOINT + "/-1", HttpMethod.PUT, createCustomerDTOWithRandomEmail()));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void deleteCustomer_ShouldIssueOneStatementPlusTombstoneAndEvent() {
+        long customerId = addCustomer();
+
+        // the delete, the tombstone for the change feed and the event
+        ResponseEntity<CustomerApiResponse> response = assertWriteStatementCount(3,
+                () -> exchange(API_ENDPOINT + "/" + customerId, HttpMethod.DELETE, null));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        // nothing was deleted, so there is no tombstone or event either
+        response = assertStatementCount(1,
+                () -> exchange(API_ENDPOINT + "/" + customerId, HttpMethod.DELETE, null));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.mortenpa.turtle.unit;
+
+import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.service.CustomerCache;
+import com.github.mortenpa.turtle.service.CustomerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    The orders in which a read that missed the cache and a write of the same customer can reach the cache,
+    the read always loaded the customer before the write committed.
+ */
+public class CustomerCacheTest {
+
+    private CustomerCache customerCache;
+
+    @BeforeEach
+    public void setUp() {
+        customerCache = new CustomerCache(new CaffeineCacheManager(CustomerService.CUSTOMER_CACHE));
+    }
+
+    private static CustomerEntity customerAtVersion(long version, String firstName) {
+        CustomerEntity customer = new CustomerEntity(firstName, "Turtle", "man@turtle.sea");
+        customer.setId(1);
+        customer.setVersion(version);
+        return customer;
+    }
+
+    @Test
+    public void put_WhenReadIsPutAfterUpdate_ShouldKeepUpdatedCustomer() {
+        customerCache.put(customerAtVersion(1, "Updated"));
+        customerCache.put(customerAtVersion(0, "Read"));
+        assertEquals("Updated", customerCache.get(1).getFirstName());
+
+        customerCache.put(customerAtVersion(2, "Updated again"));
+        assertEquals("Updated again", customerCache.get(1).getFirstName());
+    }
+
+    @Test
+    public void put_WhenReadIsPutBeforeUpdate_ShouldReplaceItWithUpdatedCustomer() {
+        customerCache.put(customerAtVersion(0, "Read"));
+        customerCache.put(customerAtVersion(1, "Updated"));
+        assertEquals("Updated", customerCache.get(1).getFirstName());
+    }
+
+    @Test
+    public void put_WhenReadIsPutAfterDelete_ShouldKeepIdOutOfCache() {
+        customerCache.put(customerAtVersion(0, "Cached"));
+        customerCache.deleted(1);
+        assertNull(customerCache.get(1));
+
+        customerCache.put(customerAtVersion(0, "Read"));
+        assertNull(customerCache.get(1));
+    }
+}
@@ -1,17 +1,26 @@
 package com.github.mortenpa.turtle.unit;
 
 
+import com.github.mortenpa.turtle.data.dto.CustomerMultiGet;
 import com.github.mortenpa.turtle.data.entity.CustomerEntity;
+import com.github.mortenpa.turtle.data.entity.CustomerEventEntity;
 import com.github.mortenpa.turtle.error.DuplicateEmailException;
 import com.github.mortenpa.turtle.error.NullNotAllowedException;
 import com.github.mortenpa.turtle.repository.CustomerRepository;
+import com.github.mortenpa.turtle.service.CustomerCache;
+import com.github.mortenpa.turtle.service.CustomerEmailRegistry;
+import com.github.mortenpa.turtle.service.CustomerEventOutbox;
+import com.github.mortenpa.turtle.service.CustomerSearchService;
 import com.github.mortenpa.turtle.service.CustomerService;
+import com.github.mortenpa.turtle.service.CustomerStatsService;
 import jakarta.validation.*;
 import net.bytebuddy.implementation.bytecode.Throw;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
@@ -22,12 +31,28 @@ import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.when;
 
 public class CustomerServiceTest {
-    @InjectMocks
     private CustomerService customerService;
 
     @Mock
     private CustomerRepository customerRepository;
 
+    // reports every email as free, duplicates are left to the mocked database
+    @Mock
+    private CustomerEmailRegistry customerEmailRegistry;
+
+    @Mock
+    private CustomerSearchService customerSearchService;
+
+    @Mock
+    private CustomerEventOutbox customerEventOutbox;
+
+    @Mock
+    private CustomerStatsService customerStatsService;
+
+    // the transactions around the writes and their events do nothing here
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private Validator validator;
     private AutoCloseable mocks;
 
@@ -72,37 +97,56 @@ public class CustomerServiceTest {
             validator = factory.getValidator();
         }
         mocks = MockitoAnnotations.openMocks(this);
+        // the service needs the real validator next to the mocked repository
+        customerService = new CustomerService(customerRepository, validator, customerEmailRegistry, customerSearchService,
+                customerEventOutbox, customerStatsService, transactionManager, new CustomerCache(new NoOpCacheManager()));
         // empty the array mocking the database
         mockDatabaseEntries = new ArrayList<>();
 
         // basically mocking the whole repository behaviour with an array
         mockSavingToRepository();
+        mockUpdatingInRepository();
         mockGetFromRepository();
+        mockGetManyFromRepository();
         mockDeletingFromRepository();
-        mockExistsInRepository();
     }
 
-    private void mockExistsInRepository() {
-        when(customerRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
-            long customerId = (long) invocationOnMock.getArgument(0) - 1;
-            if (customerId < 0 || mockDatabaseEntries.size() <= customerId) {
-                return false;
+    private void mockUpdatingInRepository() {
+        // mock the single statement update, it runs into the same constraints as saving and returns the customer as it was
+        when(customerRepository.updateCustomer(anyLong(), any(), any(), any(), any(), any())).thenAnswer(invocationOnMock -> {
+            long customerId = invocationOnMock.getArgument(0);
+            int index = (int) customerId - 1;
+            if (index < 0 || mockDatabaseEntries.size() <= index || mockDatabaseEntries.get(index).isEmpty()) {
+                return Optional.empty();
             }
-            return true;
+
+            CustomerEntity updatedCustomer = new CustomerEntity(
+                    invocationOnMock.getArgument(1),
+                    invocationOnMock.getArgument(2),
+                    invocationOnMock.getArgument(3)
+            );
+            updatedCustomer.setId(customerId);
+            checkForNulls(updatedCustomer);
+            checkForExistingEmail(updatedCustomer);
+
+            updatedCustomer.setCreatedDtime(mockDatabaseEntries.get(index).get().getCreatedDtime());
+            updatedCustomer.setModifiedDtime(invocationOnMock.getArgument(5));
+            return mockDatabaseEntries.set(index, Optional.of(updatedCustomer));
         });
     }
 
     private void mockDeletingFromRepository() {
-        // mock deleting from repository by setting the array element at the index to null
-        doAnswer(invocationOnMock -> {
+        // mock deleting from repository by setting the array element at the index to empty
+        when(customerRepository.deleteCustomerWithTombstone(anyLong())).thenAnswer(invocationOnMock -> {
             long customerId = (long) invocationOnMock.getArgument(0) - 1;
             // only try to modify the array if the index can be used
-            if (customerId >= 0 && customerId < mockDatabaseEntries.size()) {
-                mockDatabaseEntries.set((int) customerId, Optional.empty());
+            if (customerId >= 0 && customerId < mockDatabaseEntries.size() && mockDatabaseEntries.get((int) customerId).isPresent()) {
+                // the deleted row is returned by the delete statement
+                return mockDatabaseEntries.set((int) customerId, Optional.empty());
             }
 
-            return null;
-        }).when(customerRepository).deleteById(anyLong());
+            return Optional.empty();
+        });
     }
 
     private void mockGetFromRepository() {
@@ -116,6 +160,19 @@ public class CustomerServiceTest {
         });
     }
 
+    private void mockGetManyFromRepository() {
+        // mock the IN query, every id that has a customer in the array
+        when(customerRepository.findAllById(any())).thenAnswer(invocationOnMock -> {
+            List<CustomerEntity> customers = new ArrayList<>();
+            for (Long customerId : (Iterable<Long>) invocationOnMock.getArgument(0)) {
+                if (customerId >= 1 && customerId <= mockDatabaseEntries.size()) {
+                    mockDatabaseEntries.get((int) (customerId - 1)).ifPresent(customers::add);
+                }
+            }
+            return customers;
+        });
+    }
+
     private void mockSavingToRepository() {
         // mock saving to repository by returning the same element with a modified ID
         when(customerRepository.save(any(CustomerEntity.class))).thenAnswer(invocation -> {
@@ -266,6 +323,36 @@ public class CustomerServiceTest {
         assertThrows(DuplicateEmailException.class, () -> customerService.addOrModify(duplicatedCustomer));
     }
 
+    @Test
+    public void addOrModify_WhenEmailIsKnownToBeTaken_ThrowsDuplicateEmailWithoutSaving() {
+        when(customerEmailRegistry.isTaken("man@turtle.sea")).thenReturn(true);
+
+        CustomerEntity customer = new CustomerEntity("Man", "Turtle", " Man@Turtle.sea");
+        assertThrows(DuplicateEmailException.class, () -> customerService.addOrModify(customer));
+
+        // known duplicates never reach the database
+        verify(customerRepository, never()).save(any());
+    }
+
+
+    @Test
+    public void getByIds_WhenManyIds_ShouldQueryInChunksAndReportMissing() {
+        CustomerEntity first = customerService.addOrModify(new CustomerEntity("Man", "Turtle", "first@turtle.sea"));
+        CustomerEntity second = customerService.addOrModify(new CustomerEntity("Man", "Turtle", "second@turtle.sea"));
+
+        // two customers, and enough missing ids to need three chunks
+        List<Long> ids = new ArrayList<>(List.of(second.getId(), first.getId()));
+        for (long missingId = 1000; ids.size() < 2 * CustomerService.MULTI_GET_CHUNK_SIZE + 1; missingId++) {
+            ids.add(missingId);
+        }
+
+        CustomerMultiGet multiGet = customerService.getByIds(ids);
+
+        assertEquals(List.of(second.getId(), first.getId()), multiGet.getCustomers().stream().map(CustomerEntity::getId).toList());
+        assertEquals(ids.size() - 2, multiGet.getMissingIds().size());
+        assertEquals(1000L, multiGet.getMissingIds().get(0));
+        verify(customerRepository, times(3)).findAllById(any());
+    }
 
     @Test
     public void getById_WhenExistingCustomer_ShouldReturnCustomer() {
@@ -309,12 +396,15 @@ public class CustomerServiceTest {
         customer.setEmail("turtle@turtle.pond");
         CustomerEntity modifiedCustomer = customerService.addOrModify(customer);
         assertCustomerInfoMatches(modifiedCustomer, customer);
-        verify(customerRepository, times(2)).save(any(CustomerEntity.class));
+        // modifications are a single update statement, not another save
+        verify(customerRepository, times(1)).save(any(CustomerEntity.class));
+        verify(customerRepository, times(1)).updateCustomer(anyLong(), any(), any(), any(), any(), any());
 
         customer.setFirstName("Also Modified");
         modifiedCustomer = customerService.addOrModify(customer);
         assertCustomerInfoMatches(modifiedCustomer, customer);
-        verify(customerRepository, times(3)).save(any(CustomerEntity.class));
+        verify(customerRepository, times(1)).save(any(CustomerEntity.class));
+        verify(customerRepository, times(2)).updateCustomer(anyLong(), any(), any(), any(), any(), any());
     }
 
     private static void assertCustomerInfoMatches(CustomerEntity modifiedCustomer, CustomerEntity customer) {
@@ -397,13 +487,63 @@ public class CustomerServiceTest {
         CustomerEntity addedCustomer = customerService.addOrModify(customer);
         assertNotNull(addedCustomer);
 
-        customerService.delete(-1);
-        customerService.delete(addedCustomer.getId() + 1);
-        verify(customerRepository, times(0)).deleteById(any(Long.class));
+        assertFalse(customerService.delete(-1));
+        assertFalse(customerService.delete(addedCustomer.getId() + 1));
+        // both were tried, neither deleted anything
+        verify(customerRepository, times(2)).deleteCustomerWithTombstone(anyLong());
+        verify(customerEventOutbox, never()).recordDelete(anyLong());
+        verify(customerStatsService, never()).removed(any());
 
         Optional<CustomerEntity> fetchedCustomer = customerService.getById(customer.getId());
         assertTrue(fetchedCustomer.isPresent());
         assertEquals(fetchedCustomer.get().getFirstName(), customer.getFirstName());
     }
 
+    @Test
+    public void addModifyDelete_ShouldRecordAnEventForEveryWrite() {
+        CustomerEntity addedCustomer = customerService.addOrModify(new CustomerEntity("Man", "Turtle", "man@turtle.sea"));
+        verify(customerEventOutbox).record(CustomerEventEntity.Type.CREATED, addedCustomer);
+
+        CustomerEntity modifiedCustomer = customerService.modify(addedCustomer.getId(), new CustomerEntity("Nam", "Turtle", "man@turtle.sea")).orElseThrow();
+        verify(customerEventOutbox).record(CustomerEventEntity.Type.UPDATED, modifiedCustomer);
+
+        assertTrue(customerService.delete(addedCustomer.getId()));
+        verify(customerEventOutbox).recordDelete(addedCustomer.getId());
+
+        // writes that find no customer leave no event
+        assertTrue(customerService.modify(-1, new CustomerEntity("Nam", "Turtle", "man@turtle.sea")).isEmpty());
+        assertFalse(customerService.delete(addedCustomer.getId()));
+        verifyNoMoreInteractions(customerEventOutbox);
+    }
+
+    @Test
+    public void addDelete_ShouldCountCommittedCustomersInStats() {
+        CustomerEntity addedCustomer = customerService.addOrModify(new CustomerEntity("Man", "Turtle", "man@turtle.sea"));
+        verify(customerStatsService).added(addedCustomer);
+
+        assertTrue(customerService.delete(addedCustomer.getId()));
+        verify(customerStatsService).removed(addedCustomer);
+
+        // a failed insert and a delete that finds nothing are not counted
+        customerService.addOrModify(new CustomerEntity("Man", "Turtle", "other@turtle.sea"));
+        assertThrows(DuplicateEmailException.class, () -> customerService.addOrModify(new CustomerEntity("Nam", "Turtle", "other@turtle.sea")));
+        assertFalse(customerService.delete(addedCustomer.getId()));
+        verify(customerStatsService, times(2)).added(any());
+        verify(customerStatsService, times(1)).removed(any());
+    }
+
+    @Test
+    public void modify_ShouldPassTheCustomerBeforeAndAfterToStats() {
+        CustomerEntity addedCustomer = customerService.addOrModify(new CustomerEntity("Man", "Turtle", "man@turtle.sea"));
+
+        // the statistics move the customer to the new email domain
+        CustomerEntity modifiedCustomer = customerService.modify(addedCustomer.getId(), new CustomerEntity("Man", "Turtle", "man@turtle.pond")).orElseThrow();
+        verify(customerStatsService).modified(argThat(previousCustomer -> previousCustomer.getEmailNormalized().equals("man@turtle.sea")), eq(modifiedCustomer));
+        assertEquals(addedCustomer.getVersion() + 1, modifiedCustomer.getVersion());
+        assertEquals(addedCustomer.getCreatedDtime(), modifiedCustomer.getCreatedDtime());
+
+        assertTrue(customerService.modify(-1, new CustomerEntity("Man", "Turtle", "man@turtle.pond")).isEmpty());
+        verify(customerStatsService, times(1)).modified(any(), any());
+    }
+
 }